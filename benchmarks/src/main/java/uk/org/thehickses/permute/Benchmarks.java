@@ -0,0 +1,34 @@
+package uk.org.thehickses.permute;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler enabled, so that the allocation rate is reported
+ * alongside the throughput. Build and run with:
+ *
+ * <pre>
+ * mvn install -DskipTests
+ * mvn -f benchmarks/pom.xml package
+ * java -jar benchmarks/target/benchmarks.jar [JMH options]
+ * </pre>
+ *
+ * The usual JMH options apply; for example {@code -p n=8,9} restricts the sizes measured, and a
+ * regular expression selects the benchmarks to run.
+ */
+public class Benchmarks
+{
+    public static void main(String[] args) throws Exception
+    {
+        CommandLineOptions options = new CommandLineOptions(args);
+        if (options.shouldHelp() || options.shouldList() || options.shouldListWithParams()
+                || options.shouldListProfilers() || options.shouldListResultFormats())
+            Main.main(args);
+        else
+            new Runner(new OptionsBuilder().parent(options).addProfiler(GCProfiler.class).build())
+                    .run();
+    }
+}
@@ -0,0 +1,77 @@
+package uk.org.thehickses.permute;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the cost of checkpointing, by producing all the permutations of n items without a
+ * checkpoint manager, with one that outputs checkpoints every second (so that the spliterators
+ * only build checkpoint strings when asked), and with one that has no output timer (so that they
+ * build one for every permutation). A manager closes once all the permutations have been produced,
+ * so each invocation has a new one, sharing a single scheduler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class CheckpointBenchmark
+{
+    @Param({ "9", "10", "11" })
+    public int n;
+
+    @Param({ "none", "timed", "everyPermutation" })
+    public String checkpointing;
+
+    private Permuter<Integer> permuter;
+    private CheckpointManager checkpointManager;
+
+    @Setup
+    public void setUp()
+    {
+        permuter = new Permuter<>(IntStream.range(0, n).boxed());
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpCheckpointManager()
+    {
+        checkpointManager = checkpointing.equals("timed") ? new CheckpointManager(1, data -> {
+        }, CheckpointManager.sharedScheduler())
+                : checkpointing.equals("everyPermutation") ? new CheckpointManager() : null;
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDownCheckpointManager()
+    {
+        if (checkpointManager != null)
+            checkpointManager.close();
+    }
+
+    @Benchmark
+    public void parallel(Blackhole blackhole)
+    {
+        permuter.permute(checkpointManager).forEach(p -> p.forEach(blackhole::consume));
+    }
+
+    @Benchmark
+    public void visitor(Blackhole blackhole)
+    {
+        permuter.forEach(checkpointManager, blackhole::consume);
+    }
+}
@@ -0,0 +1,64 @@
+package uk.org.thehickses.permute;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the rate at which all the permutations of n items are produced, with no validator.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class PermuteBenchmark
+{
+    @Param({ "8", "9", "10", "11", "12", "13" })
+    public int n;
+
+    private Permuter<Integer> permuter;
+
+    @Setup
+    public void setUp()
+    {
+        permuter = new Permuter<>(IntStream.range(0, n).boxed());
+    }
+
+    @Benchmark
+    public void sequential(Blackhole blackhole)
+    {
+        permuter.permute().sequential().forEach(p -> p.forEach(blackhole::consume));
+    }
+
+    @Benchmark
+    public void parallel(Blackhole blackhole)
+    {
+        permuter.permute().forEach(p -> p.forEach(blackhole::consume));
+    }
+
+    @Benchmark
+    public void visitor(Blackhole blackhole)
+    {
+        permuter.forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    public void batched(Blackhole blackhole)
+    {
+        permuter.forEachBatch(1024, (perms, count) -> blackhole.consume(perms));
+    }
+}
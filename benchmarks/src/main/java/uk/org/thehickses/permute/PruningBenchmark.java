@@ -0,0 +1,90 @@
+package uk.org.thehickses.permute;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the rate at which permutations of n items are produced when a validator rejects the
+ * specified percentage of the two-item prefixes, and so roughly that percentage of the
+ * permutations. The rejected prefixes are scattered through the ordering rather than being
+ * contiguous, so that pruning is spread across the spliterators when running in parallel.
+ *
+ * The validator either throws a {@link ValidationException} to reject a prefix, or returns its
+ * verdict.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class PruningBenchmark
+{
+    @Param({ "9", "10", "11" })
+    public int n;
+
+    @Param({ "0", "50", "90", "99" })
+    public int rejectPercentage;
+
+    @Param({ "exception", "verdict" })
+    public String validator;
+
+    private Permuter<Integer> permuter;
+
+    @Setup
+    public void setUp()
+    {
+        if (validator.equals("exception"))
+            permuter = new Permuter<>(this::validate, IntStream.range(0, n).boxed());
+        else
+            permuter = new Permuter<>(IntStream.range(0, n).boxed())
+                    .withValidator(PrefixValidator.incremental(this::isValid));
+    }
+
+    private void validate(Stream<Integer> prefix) throws ValidationException
+    {
+        List<Integer> start = prefix.limit(2).collect(Collectors.toList());
+        if (start.size() == 2 && isRejected(start.get(0), start.get(1)))
+            throw new ValidationException();
+    }
+
+    private boolean isValid(List<Integer> prefix)
+    {
+        return prefix.size() != 2 || !isRejected(prefix.get(0), prefix.get(1));
+    }
+
+    private boolean isRejected(int first, int second)
+    {
+        int pairCount = n * (n - 1);
+        int pairIndex = first * (n - 1) + (second > first ? second - 1 : second);
+        return (pairIndex * 37 % pairCount) * 100 < rejectPercentage * pairCount;
+    }
+
+    @Benchmark
+    public void sequential(Blackhole blackhole)
+    {
+        permuter.permute().sequential().forEach(p -> p.forEach(blackhole::consume));
+    }
+
+    @Benchmark
+    public void parallel(Blackhole blackhole)
+    {
+        permuter.permute().forEach(p -> p.forEach(blackhole::consume));
+    }
+}
@@ -0,0 +1,83 @@
+package uk.org.thehickses.permute;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the rate at which a spliterator over all the permutations of n items can be split
+ * recursively to the specified depth, and how evenly the splits divide the work.
+ *
+ * The balance is reported through the auxiliary counters: {@code imbalance} is the total, over
+ * all the splits, of the difference between the sizes of the two halves in thousandths of the
+ * size before splitting, so {@code imbalance / splits} is the mean imbalance of a split.
+ * {@code failedSplits} counts the splits that were refused although more than one permutation
+ * remained.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class SplitBenchmark
+{
+    @Param({ "8", "9", "10", "11", "12", "13" })
+    public int n;
+
+    @Param({ "4", "8", "12" })
+    public int depth;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Balance
+    {
+        public long splits;
+        public long failedSplits;
+        public long imbalance;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            splits = failedSplits = imbalance = 0;
+        }
+    }
+
+    @Benchmark
+    public long split(Balance balance)
+    {
+        return split(new IntArrayPermuterSpliterator(n), depth, balance);
+    }
+
+    private static long split(IntArrayPermuterSpliterator spliterator, int depth,
+            Balance balance)
+    {
+        if (depth == 0)
+            return spliterator.estimateSize();
+        long size = spliterator.estimateSize();
+        IntArrayPermuterSpliterator prefix = spliterator.trySplit();
+        if (prefix == null)
+        {
+            if (size > 1)
+                balance.failedSplits++;
+            return size;
+        }
+        long prefixSize = prefix.estimateSize();
+        long suffixSize = spliterator.estimateSize();
+        balance.splits++;
+        balance.imbalance += Math.abs(prefixSize - suffixSize) * 1000 / size;
+        return split(prefix, depth - 1, balance) + split(spliterator, depth - 1, balance);
+    }
+}
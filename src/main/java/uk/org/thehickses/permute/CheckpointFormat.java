@@ -0,0 +1,22 @@
+package uk.org.thehickses.permute;
+
+/**
+ * The formats of the checkpoint strings which describe how far a spliterator has got. A run can be
+ * resumed from strings in either format, or a mixture of the two.
+ */
+public enum CheckpointFormat
+{
+    /**
+     * The candidates remaining at each level of the search, the levels being separated by
+     * {@code /} and the candidates at each level by {@code ,}; for instance {@code 0,1,2/3,4/4}.
+     * The length of a string grows with the square of the number of items. This is the default.
+     */
+    LEVELS,
+
+    /**
+     * The range of ranks, as defined by {@link PermutationRanker}, of the permutations remaining,
+     * as the rank of the next permutation and the rank after the last separated by {@code -}; for
+     * instance {@code 1234-5678}. The length of a string grows with the number of items.
+     */
+    RANKS
+}
@@ -1,32 +1,82 @@
 package uk.org.thehickses.permute;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
-import java.util.SortedMap;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class CheckpointManager
+/**
+ * Collects the checkpoint strings published by spliterators, and periodically outputs them.
+ *
+ * Building a checkpoint string costs more than producing a permutation, so spliterators do not
+ * build one for every permutation. Instead, half an interval before each output the timer requests
+ * fresh strings, by advancing a volatile request counter; a spliterator checks the counter after
+ * each permutation (or batch) that it delivers, which costs no more than a field read, and
+ * publishes its state only when there is a request it has not yet answered. A spliterator also
+ * publishes once as soon as it starts, so that every spliterator is represented in the first
+ * output, and one split off from another is represented before it has delivered anything. The
+ * parent publishes its reduced state at the split, before the new spliterator publishes, so that
+ * no output covers the same work twice. Each output therefore reflects
+ * the state of the spliterators about half an interval before it, which is as good a place to
+ * resume from; the format of the output, and the way a run resumes from it, are unaffected.
+ * Nothing is output until at least one spliterator has registered, since until then there is
+ * nothing to resume.
+ *
+ * The strings are published, each being immutable, into a lock-free map ordered by spliterator
+ * ID, so publishing never blocks a worker and taking a snapshot of the checkpoints never stalls
+ * one.
+ *
+ * The requests and the output are scheduled on a {@link ScheduledExecutorService}. By default each
+ * manager has its own, with a single daemon thread, so that a manager that is never closed does
+ * not stop the JVM from exiting; alternatively a scheduler can be supplied, such as the one
+ * returned by {@link #sharedScheduler()}, so that many managers can share a thread. When the last
+ * registered spliterator deregisters, the work is complete: the manager outputs the final state
+ * of the checkpoints (which is normally that there are none) straight away, without waiting for
+ * the next interval, and then closes. Closing a manager outputs the checkpoints as they stand,
+ * stops any further output, and shuts down its scheduler if it has its own.
+ *
+ * A manager created without an output interval (which is only possible within this package) has
+ * nobody to make requests, and so asks for a checkpoint after every permutation.
+ */
+public class CheckpointManager implements AutoCloseable
 {
     private final static Logger CHECKPOINT_LOGGER = LoggerFactory.getLogger("checkpoint");
+    private final static Logger LOG = LoggerFactory.getLogger(CheckpointManager.class);
 
     private final AtomicInteger idGenerator = new AtomicInteger();
-    private SortedMap<Integer, String> currentCheckpoints = new TreeMap<>();
-    private final List<String> initStrings;
+    private final AtomicInteger liveCount = new AtomicInteger();
+    private final ConcurrentNavigableMap<Integer, String> currentCheckpoints =
+            new ConcurrentSkipListMap<>();
+    private volatile List<String> initStrings;
+    private final boolean checkpointEveryPermutation;
+    private volatile long requestCount = 0;
+    private volatile CheckpointFormat format = CheckpointFormat.LEVELS;
+    private final CheckpointOutputHandler outputHandler;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownScheduler;
+    private final List<ScheduledFuture<?>> scheduledTasks;
+    private String lastOutput;
+    private boolean closed = false;
 
     CheckpointManager(String... initStrings)
     {
-        this(null, null, Stream.of(initStrings));
+        this(null, null, null, Stream.of(initStrings));
     }
 
     public CheckpointManager(int outputIntervalInSeconds, String... initStrings)
@@ -59,18 +109,99 @@ public class CheckpointManager
     public CheckpointManager(int outputIntervalInSeconds, CheckpointOutputHandler outputHandler,
             Stream<String> initStrings)
     {
-        this(new Integer(outputIntervalInSeconds), outputHandler, initStrings);
+        this(new Integer(outputIntervalInSeconds), outputHandler, null, initStrings);
+    }
+
+    /**
+     * Creates a manager whose output is scheduled on the specified scheduler, which it does not
+     * shut down when it closes; if the scheduler is null, the manager has its own.
+     */
+    public CheckpointManager(int outputIntervalInSeconds, CheckpointOutputHandler outputHandler,
+            ScheduledExecutorService scheduler, String... initStrings)
+    {
+        this(outputIntervalInSeconds, outputHandler, scheduler, Stream.of(initStrings));
+    }
+
+    public CheckpointManager(int outputIntervalInSeconds, CheckpointOutputHandler outputHandler,
+            ScheduledExecutorService scheduler, Collection<String> initStrings)
+    {
+        this(outputIntervalInSeconds, outputHandler, scheduler, initStrings.stream());
+    }
+
+    public CheckpointManager(int outputIntervalInSeconds, CheckpointOutputHandler outputHandler,
+            ScheduledExecutorService scheduler, Stream<String> initStrings)
+    {
+        this(Integer.valueOf(outputIntervalInSeconds), outputHandler, scheduler, initStrings);
     }
 
     private CheckpointManager(Integer outputIntervalInSeconds,
-            CheckpointOutputHandler outputHandler, Stream<String> initStrings)
+            CheckpointOutputHandler outputHandler, ScheduledExecutorService scheduler,
+            Stream<String> initStrings)
     {
-        this.initStrings = initStrings.collect(Collectors.toList());
-        if (outputIntervalInSeconds == null)
-            return;
-        if (outputIntervalInSeconds <= 0)
+        if (outputIntervalInSeconds != null && outputIntervalInSeconds <= 0)
             throw new IllegalArgumentException("Output interval must be at least one second");
-        scheduleCheckpointTask(outputIntervalInSeconds, outputHandler);
+        this.initStrings = initStrings.collect(Collectors.toList());
+        this.checkpointEveryPermutation = outputIntervalInSeconds == null;
+        this.outputHandler = outputHandler != null ? outputHandler : this::writeCheckpointToLog;
+        this.ownScheduler = outputIntervalInSeconds != null && scheduler == null;
+        this.scheduler = ownScheduler ? newScheduler() : scheduler;
+        this.scheduledTasks = outputIntervalInSeconds == null ? Collections.emptyList()
+                : schedule(TimeUnit.SECONDS.toMillis(outputIntervalInSeconds));
+    }
+
+    /**
+     * Gets a scheduler with a single daemon thread, which can be shared by any number of managers
+     * so that they do not each need a thread of their own. It is never shut down.
+     */
+    public static ScheduledExecutorService sharedScheduler()
+    {
+        return SharedScheduler.INSTANCE;
+    }
+
+    private static ScheduledExecutorService newScheduler()
+    {
+        ScheduledThreadPoolExecutor answer = new ScheduledThreadPoolExecutor(1, task -> {
+            Thread thread = new Thread(task, "checkpoint-output");
+            thread.setDaemon(true);
+            return thread;
+        });
+        answer.setRemoveOnCancelPolicy(true);
+        return answer;
+    }
+
+    /**
+     * Creates a manager which resumes from the most recent snapshot in the specified file, if
+     * there is one, and otherwise starts from the beginning, and which writes its checkpoints to
+     * the file at the specified interval (see {@link FileCheckpointStore}). So a run which is
+     * started in the same way after a crash resumes automatically, having lost no more than about
+     * an interval's work.
+     */
+    public static CheckpointManager resumeFrom(Path file, int outputIntervalInSeconds)
+            throws IOException
+    {
+        return resumeFrom(new FileCheckpointStore(file), outputIntervalInSeconds);
+    }
+
+    /**
+     * As {@link #resumeFrom(Path, int)}, with the specified store.
+     */
+    public static CheckpointManager resumeFrom(FileCheckpointStore store,
+            int outputIntervalInSeconds) throws IOException
+    {
+        return resumeFrom(store, outputIntervalInSeconds, null);
+    }
+
+    /**
+     * As {@link #resumeFrom(Path, int)}, with the specified store, and with the output scheduled
+     * on the specified scheduler, which the manager does not shut down; if it is null, the
+     * manager has its own.
+     */
+    public static CheckpointManager resumeFrom(FileCheckpointStore store,
+            int outputIntervalInSeconds, ScheduledExecutorService scheduler) throws IOException
+    {
+        List<String> initStrings = store.read();
+        return new CheckpointManager(outputIntervalInSeconds, store, scheduler,
+                initStrings == null ? Collections.<String> emptyList() : initStrings);
     }
 
     public int getInitStringCount()
@@ -78,42 +209,107 @@ public class CheckpointManager
         return initStrings.size();
     }
 
-    private void scheduleCheckpointTask(int outputIntervalInSeconds,
-            CheckpointOutputHandler outputHandler)
+    /**
+     * Hands over the init strings, so that the work they describe can be shared out afresh (see
+     * {@link CheckpointRebalancer}); spliterators registered from then on are given none.
+     */
+    synchronized List<String> takeInitStrings()
     {
-        CheckpointOutputHandler handler = outputHandler != null ? outputHandler
-                : this::writeCheckpointToLog;
-        AtomicReference<String> lastData = new AtomicReference<>();
-        TimerTask checkpointTask = new RunnableTimerTask(() -> {
-            String data = checkpointData();
-            if (!Objects.equals(lastData.getAndSet(data), data))
-                handler.handleOutput(data);
-        });
-        long interval = TimeUnit.SECONDS.toMillis(outputIntervalInSeconds);
-        new Timer().schedule(checkpointTask, interval, interval);
+        List<String> answer = initStrings;
+        initStrings = Collections.emptyList();
+        return answer;
+    }
+
+    public CheckpointFormat getFormat()
+    {
+        return format;
+    }
+
+    /**
+     * Sets the format of the checkpoint strings published from now on. The init strings, and the
+     * strings output by a previous run, can be in either format whatever this is set to.
+     */
+    public void setFormat(CheckpointFormat format)
+    {
+        this.format = Objects.requireNonNull(format);
+    }
+
+    private List<ScheduledFuture<?>> schedule(long intervalInMillis)
+    {
+        return Arrays.asList(
+                scheduler.scheduleAtFixedRate(this::requestCheckpoints, intervalInMillis / 2,
+                        intervalInMillis, TimeUnit.MILLISECONDS),
+                scheduler.scheduleAtFixedRate(this::output, intervalInMillis, intervalInMillis,
+                        TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Outputs the checkpoints, unless nothing has registered yet, the manager is closed, or they
+     * are the same as last time. A failure is logged rather than thrown, since a scheduled task
+     * which throws is never run again.
+     */
+    private synchronized void output()
+    {
+        if (idGenerator.get() == 0 || closed)
+            return;
+        String data = checkpointData();
+        if (data.equals(lastOutput))
+            return;
+        lastOutput = data;
+        try
+        {
+            outputHandler.handleOutput(data);
+        }
+        catch (RuntimeException ex)
+        {
+            LOG.error("Unable to output checkpoint data", ex);
+        }
+    }
+
+    /**
+     * Outputs the checkpoints as they stand, unless the manager is already closed, and stops any
+     * further output. Does nothing to a manager created without an output interval.
+     */
+    @Override
+    public synchronized void close()
+    {
+        if (scheduler == null || closed)
+            return;
+        output();
+        closed = true;
+        scheduledTasks.forEach(task -> task.cancel(false));
+        if (ownScheduler)
+            scheduler.shutdown();
+    }
+
+    void requestCheckpoints()
+    {
+        requestCount++;
     }
 
     public Checkpointer register()
     {
         int id = idGenerator.getAndIncrement();
+        liveCount.incrementAndGet();
+        List<String> initStrings = this.initStrings;
         String initString = id >= initStrings.size() ? null : initStrings.get(id);
         return new Checkpointer(id, initString);
     }
 
+    /**
+     * Removes the checkpoint of the spliterator with the specified ID, which has finished; if it
+     * was the last one registered, closes the manager.
+     */
     void deregister(int id)
     {
-        synchronized (currentCheckpoints)
-        {
-            currentCheckpoints.remove(id);
-        }
+        currentCheckpoints.remove(id);
+        if (liveCount.decrementAndGet() == 0)
+            close();
     }
 
     void checkpoint(int id, String cpString)
     {
-        synchronized (currentCheckpoints)
-        {
-            currentCheckpoints.put(id, cpString);
-        }
+        currentCheckpoints.put(id, cpString);
     }
 
     private void writeCheckpointToLog(String data)
@@ -126,16 +322,15 @@ public class CheckpointManager
 
     private String checkpointData()
     {
-        synchronized (currentCheckpoints)
-        {
-            return currentCheckpoints.values().stream().collect(Collectors.joining("\n"));
-        }
+        return currentCheckpoints.values().stream().collect(Collectors.joining("\n"));
     }
 
     public class Checkpointer
     {
         private final int id;
         public final String initString;
+        private long requestsAnswered = -1;
+        private boolean deregistered = false;
 
         Checkpointer(int id, String initString)
         {
@@ -148,8 +343,19 @@ public class CheckpointManager
             return CheckpointManager.this;
         }
 
+        public CheckpointFormat getFormat()
+        {
+            return format;
+        }
+
+        /**
+         * Deregisters from the manager; does nothing if already deregistered.
+         */
         public void deregister()
         {
+            if (deregistered)
+                return;
+            deregistered = true;
             CheckpointManager.this.deregister(id);
         }
 
@@ -157,6 +363,20 @@ public class CheckpointManager
         {
             CheckpointManager.this.checkpoint(id, cpString);
         }
+
+        /**
+         * Publishes the checkpoint string obtained from the specified supplier if a checkpoint
+         * has been requested since the last one published by this means, and otherwise does
+         * nothing, so that the string is only built when it is needed.
+         */
+        public void checkpointIfRequested(Supplier<String> cpString)
+        {
+            long requests = requestCount;
+            if (requests == requestsAnswered && !checkpointEveryPermutation)
+                return;
+            requestsAnswered = requests;
+            checkpoint(cpString.get());
+        }
     }
 
     @FunctionalInterface
@@ -165,19 +385,8 @@ public class CheckpointManager
         void handleOutput(String data);
     }
 
-    private static class RunnableTimerTask extends TimerTask
+    private static class SharedScheduler
     {
-        private final Runnable whatToDo;
-
-        public RunnableTimerTask(Runnable whatToDo)
-        {
-            this.whatToDo = whatToDo;
-        }
-
-        @Override
-        public void run()
-        {
-            whatToDo.run();
-        }
+        private static final ScheduledExecutorService INSTANCE = newScheduler();
     }
 }
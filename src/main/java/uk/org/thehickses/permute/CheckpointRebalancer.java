@@ -0,0 +1,118 @@
+package uk.org.thehickses.permute;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Shares out the work described by a set of checkpoint strings afresh when a run resumes, so that
+ * it is divided according to the parallelism available rather than according to however many
+ * spliterators happened to be live when the checkpoint was taken.
+ *
+ * The permutations remaining for a checkpoint string produced by a spliterator have a contiguous
+ * range of ranks, so the work can be described as a set of ranges. Ranges which adjoin or overlap
+ * are joined together, and the result is then cut into units of as near equal size as possible,
+ * one per thread; a unit may take in several small ranges or part of a large one. No range is
+ * ever stretched to cover a gap, so exactly the permutations that would have been produced by the
+ * original spliterators are produced, each once, and no others. A checkpoint string whose
+ * permutations do not have a contiguous range of ranks is left as it is, in a unit of its own.
+ */
+class CheckpointRebalancer
+{
+    private CheckpointRebalancer()
+    {
+    }
+
+    /**
+     * Divides the work described by the specified checkpoint strings, for spliterators whose range
+     * ends at {@code toRank}, into units of work, each of which is a list of checkpoint strings.
+     * There are no more than {@code unitCount} units, plus one for each checkpoint string which
+     * is left as it is.
+     */
+    static List<List<String>> rebalance(PermutationRanker ranker, BigInteger toRank,
+            List<String> checkpointStrings, int unitCount)
+    {
+        List<BigInteger[]> ranges = new ArrayList<>();
+        List<List<String>> unchanged = new ArrayList<>();
+        for (String str : checkpointStrings)
+        {
+            String rankString = IntArrayPermuterSpliterator.toRankCheckpointString(ranker, str,
+                    toRank);
+            if (rankString == null)
+                unchanged.add(Collections.singletonList(str));
+            else if (!rankString.isEmpty())
+                ranges.add(IntArrayPermuterSpliterator.fromRankCheckpointString(rankString));
+        }
+        ranges.sort(Comparator.comparing(range -> range[0]));
+        List<List<String>> answer = new ArrayList<>();
+        for (List<BigInteger[]> unit : divide(join(ranges), unitCount))
+        {
+            List<String> strings = new ArrayList<>();
+            unit.forEach(range -> strings.add(range[0] + "-" + range[1]));
+            answer.add(strings);
+        }
+        answer.addAll(unchanged);
+        return answer;
+    }
+
+    /**
+     * Joins together any of the specified ranges, which must be in order of their starts, that
+     * adjoin or overlap, and drops any that are empty.
+     */
+    static List<BigInteger[]> join(List<BigInteger[]> sortedRanges)
+    {
+        List<BigInteger[]> answer = new ArrayList<>();
+        for (BigInteger[] range : sortedRanges)
+        {
+            if (range[0].compareTo(range[1]) >= 0)
+                continue;
+            BigInteger[] last = answer.isEmpty() ? null : answer.get(answer.size() - 1);
+            if (last != null && last[1].compareTo(range[0]) >= 0)
+                last[1] = last[1].max(range[1]);
+            else
+                answer.add(range.clone());
+        }
+        return answer;
+    }
+
+    /**
+     * Cuts the specified ranges into at most {@code unitCount} units, each containing the same
+     * number of ranks except the last, which may contain fewer.
+     */
+    static List<List<BigInteger[]>> divide(List<BigInteger[]> ranges, int unitCount)
+    {
+        if (unitCount < 1)
+            throw new IllegalArgumentException("Unit count must be at least 1");
+        BigInteger total = ranges
+                .stream()
+                .map(range -> range[1].subtract(range[0]))
+                .reduce(BigInteger.ZERO, BigInteger::add);
+        BigInteger count = BigInteger.valueOf(unitCount);
+        BigInteger unitSize = total.add(count).subtract(BigInteger.ONE).divide(count);
+        List<List<BigInteger[]>> answer = new ArrayList<>();
+        List<BigInteger[]> unit = new ArrayList<>();
+        BigInteger unitRemaining = unitSize;
+        for (BigInteger[] range : ranges)
+        {
+            BigInteger from = range[0];
+            while (from.compareTo(range[1]) < 0)
+            {
+                BigInteger to = range[1].min(from.add(unitRemaining));
+                unit.add(new BigInteger[] { from, to });
+                unitRemaining = unitRemaining.subtract(to.subtract(from));
+                from = to;
+                if (unitRemaining.signum() == 0)
+                {
+                    answer.add(unit);
+                    unit = new ArrayList<>();
+                    unitRemaining = unitSize;
+                }
+            }
+        }
+        if (!unit.isEmpty())
+            answer.add(unit);
+        return answer;
+    }
+}
@@ -0,0 +1,137 @@
+package uk.org.thehickses.permute;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.org.thehickses.permute.CheckpointManager.CheckpointOutputHandler;
+
+/**
+ * Keeps checkpoint output in a file, so that a run can be resumed from it (see
+ * {@link CheckpointManager#resumeFrom(FileCheckpointStore, int)}) without anyone having to copy
+ * the checkpoint strings out of a log.
+ *
+ * Each snapshot is written to a temporary file in the same directory, forced to disk and then
+ * renamed over the file, so the file always holds a complete snapshot, even if the process dies
+ * part way through a write. Earlier snapshots are kept, up to the specified number of generations
+ * in all, in files whose names are that of the file followed by {@code .1} (the previous one),
+ * {@code .2} and so on; if the file itself is missing, which can happen if the process dies while
+ * the generations are being moved along, the most recent of these is read instead.
+ */
+public class FileCheckpointStore implements CheckpointOutputHandler
+{
+    private static final Logger LOG = LoggerFactory.getLogger(FileCheckpointStore.class);
+
+    private final Path file;
+    private final int generations;
+
+    public FileCheckpointStore(Path file)
+    {
+        this(file, 1);
+    }
+
+    public FileCheckpointStore(Path file, int generations)
+    {
+        if (generations < 1)
+            throw new IllegalArgumentException("At least one generation must be kept");
+        this.file = file.toAbsolutePath();
+        this.generations = generations;
+    }
+
+    public Path getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Writes the specified checkpoint data, logging rather than throwing any failure so that the
+     * checkpoints continue to be written at the next interval.
+     */
+    @Override
+    public void handleOutput(String data)
+    {
+        try
+        {
+            write(data);
+        }
+        catch (IOException ex)
+        {
+            LOG.error("Unable to write checkpoint data to {}", file, ex);
+        }
+    }
+
+    public void write(String data) throws IOException
+    {
+        Path temp = sibling(".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+        {
+            ByteBuffer buffer = ByteBuffer.wrap(data.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            channel.force(true);
+        }
+        for (int generation = generations - 1; generation > 0; generation--)
+        {
+            Path previous = generation(generation - 1);
+            if (Files.exists(previous))
+                Files.move(previous, generation(generation), StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory();
+    }
+
+    /**
+     * Makes the renames durable. Not every platform allows a directory to be opened, in which case
+     * this is left to the file system.
+     */
+    private void forceDirectory()
+    {
+        try (FileChannel channel = FileChannel.open(file.getParent(), StandardOpenOption.READ))
+        {
+            channel.force(true);
+        }
+        catch (IOException ex)
+        {
+            LOG.debug("Unable to force directory {}", file.getParent(), ex);
+        }
+    }
+
+    /**
+     * Reads the checkpoint strings in the most recent snapshot, or returns null if there is none.
+     * A snapshot written when no spliterator had anything left to do yields a single empty
+     * string, from which a spliterator resumes with nothing to do.
+     */
+    public List<String> read() throws IOException
+    {
+        for (int generation = 0; generation < generations; generation++)
+        {
+            Path path = generation(generation);
+            if (Files.exists(path))
+                return Arrays
+                        .asList(new String(Files.readAllBytes(path), StandardCharsets.UTF_8)
+                                .split("\n"));
+        }
+        return null;
+    }
+
+    private Path generation(int generation)
+    {
+        return generation == 0 ? file : sibling("." + generation);
+    }
+
+    private Path sibling(String suffix)
+    {
+        return file.resolveSibling(file.getFileName() + suffix);
+    }
+}
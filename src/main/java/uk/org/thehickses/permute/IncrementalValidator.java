@@ -0,0 +1,12 @@
+package uk.org.thehickses.permute;
+
+/**
+ * The equivalent of {@link IntIncrementalValidator} for use with a {@link Permuter}, which is
+ * passed each item along with its index.
+ */
+public interface IncrementalValidator<T>
+{
+    boolean push(int index, T item);
+
+    void pop();
+}
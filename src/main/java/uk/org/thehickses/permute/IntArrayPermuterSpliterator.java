@@ -0,0 +1,805 @@
+package uk.org.thehickses.permute;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import uk.org.thehickses.permute.CheckpointManager.Checkpointer;
+import uk.org.thehickses.permute.PermutationMetrics.Recorder;
+
+/**
+ * Produces the same results and checkpoint strings as {@link PermuterSpliterator}, but holds its
+ * state in flat primitive arrays so that moving from one permutation to the next allocates nothing.
+ * The candidates remaining at each level are held in a slice of {@code queues}: the slice for level
+ * {@code l} starts at {@code l * maxIndex}, and its live part runs from {@code heads[l]}
+ * (inclusive) to {@code tails[l]} (exclusive). The candidate at the head of each slice is the value
+ * currently chosen at that level, and is mirrored in {@code current}. The values in the current
+ * prefix are also held in {@code used}, a bitset of 64 values per word, so that the candidates for
+ * a level can be found a word at a time.
+ *
+ * Like any spliterator, an instance is only used by one thread at a time, so none of its methods
+ * take a lock. The only state that other threads see is the checkpoint string it publishes, which
+ * is immutable and is handed over through the lock-free map in {@link CheckpointManager}; the
+ * string is only built when the manager has asked for one.
+ */
+public class IntArrayPermuterSpliterator implements IntPermutationSpliterator
+{
+    private final int maxIndex;
+    private final int length;
+    private final PermutationRanker ranker;
+    private final long[] groupStarts;
+    private final int[] current;
+    private final int[] queues;
+    private final int[] heads;
+    private final int[] tails;
+    private final long[] used;
+    private final int[] end;
+    private final int[] view;
+    private int depth;
+    private long remaining;
+    private final Supplier<? extends IntIncrementalValidator> validatorFactory;
+    private final IntIncrementalValidator validator;
+    private final Checkpointer checkpointer;
+    private final Supplier<String> checkpointString = this::checkpointString;
+    private final Recorder recorder;
+
+    public IntArrayPermuterSpliterator(int maxIndex)
+    {
+        this(new PermutationRanker(maxIndex), allCandidates(maxIndex), null, null, null, null,
+                null);
+    }
+
+    public IntArrayPermuterSpliterator(int maxIndex, CheckpointManager checkpointManager)
+    {
+        this(new PermutationRanker(maxIndex), allCandidates(maxIndex), null, null, null,
+                checkpointManager, null);
+    }
+
+    public IntArrayPermuterSpliterator(int maxIndex,
+            IntPartialResultValidator partialResultValidator)
+    {
+        this(maxIndex, partialResultValidator, null);
+    }
+
+    public IntArrayPermuterSpliterator(int maxIndex,
+            IntPartialResultValidator partialResultValidator, CheckpointManager checkpointManager)
+    {
+        this(new PermutationRanker(maxIndex), allCandidates(maxIndex), null, null,
+                PrefixValidatorAdapter.factory(partialResultValidator), checkpointManager, null);
+    }
+
+    /**
+     * Creates a spliterator which validates each prefix with the specified validator. This is a
+     * factory method rather than a constructor so that passing null as the validator to the
+     * constructors remains unambiguous.
+     */
+    public static IntArrayPermuterSpliterator withPrefixValidator(int maxIndex,
+            IntPrefixValidator prefixValidator, CheckpointManager checkpointManager)
+    {
+        return withValidator(maxIndex, PrefixValidatorAdapter.factory(prefixValidator),
+                checkpointManager);
+    }
+
+    /**
+     * Creates a spliterator which validates each prefix with validators from the specified factory
+     * (see {@link IntIncrementalValidator}).
+     */
+    public static IntArrayPermuterSpliterator withValidator(int maxIndex,
+            Supplier<? extends IntIncrementalValidator> validatorFactory,
+            CheckpointManager checkpointManager)
+    {
+        return new IntArrayPermuterSpliterator(new PermutationRanker(maxIndex),
+                allCandidates(maxIndex), null, null, validatorFactory, checkpointManager, null);
+    }
+
+    public IntArrayPermuterSpliterator(int maxIndex, long fromRank, long toRank)
+    {
+        this(maxIndex, fromRank, toRank, null, null);
+    }
+
+    public IntArrayPermuterSpliterator(int maxIndex, long fromRank, long toRank,
+            IntPartialResultValidator partialResultValidator, CheckpointManager checkpointManager)
+    {
+        this(maxIndex, BigInteger.valueOf(fromRank), BigInteger.valueOf(toRank),
+                partialResultValidator, checkpointManager);
+    }
+
+    /**
+     * Creates a spliterator which produces the permutations whose ranks, as defined by
+     * {@link PermutationRanker}, are at least {@code fromRank} and less than {@code toRank}.
+     */
+    public IntArrayPermuterSpliterator(int maxIndex, BigInteger fromRank, BigInteger toRank,
+            IntPartialResultValidator partialResultValidator, CheckpointManager checkpointManager)
+    {
+        this(new PermutationRanker(maxIndex), fromRank, toRank,
+                PrefixValidatorAdapter.factory(partialResultValidator), checkpointManager);
+    }
+
+    /**
+     * Creates a spliterator which produces the permutations of the items defined by the specified
+     * ranker whose ranks are in the specified range. If the ranker is for a multiset, only the
+     * permutations in which equal items are in ascending order of index are produced, so each
+     * distinct arrangement of the items is produced exactly once. If it is for arrangements of
+     * fewer than all the items, the search stops at that depth.
+     */
+    public IntArrayPermuterSpliterator(PermutationRanker ranker, BigInteger fromRank,
+            BigInteger toRank, Supplier<? extends IntIncrementalValidator> validatorFactory,
+            CheckpointManager checkpointManager)
+    {
+        this(ranker, fromRank, toRank, validatorFactory, checkpointManager, null);
+    }
+
+    /**
+     * As {@link #IntArrayPermuterSpliterator(PermutationRanker, BigInteger, BigInteger, Supplier,
+     * CheckpointManager)}, with its progress, and that of the spliterators split off from it,
+     * recorded in the specified metrics if they are not null.
+     */
+    IntArrayPermuterSpliterator(PermutationRanker ranker, BigInteger fromRank, BigInteger toRank,
+            Supplier<? extends IntIncrementalValidator> validatorFactory,
+            CheckpointManager checkpointManager, PermutationMetrics metrics)
+    {
+        this(ranker, null, rangeStart(ranker, fromRank, toRank), rangeEnd(ranker, toRank),
+                validatorFactory, checkpointManager, metrics);
+    }
+
+    private static int[] rangeStart(PermutationRanker ranker, BigInteger fromRank,
+            BigInteger toRank)
+    {
+        if (fromRank.compareTo(toRank) > 0)
+            throw new IllegalArgumentException(
+                    "Start rank " + fromRank + " is after end rank " + toRank);
+        return fromRank.equals(toRank) ? null : ranker.unrank(fromRank);
+    }
+
+    private static int[] rangeEnd(PermutationRanker ranker, BigInteger toRank)
+    {
+        int comparison = toRank.compareTo(ranker.bigCount());
+        if (comparison > 0)
+            throw new IllegalArgumentException("End rank " + toRank + " is out of range");
+        return comparison == 0 ? null : ranker.unrank(toRank);
+    }
+
+    private static int[][] allCandidates(int maxIndex)
+    {
+        return maxIndex == 0 ? new int[0][]
+                : new int[][] { IntStream.range(0, maxIndex).toArray() };
+    }
+
+    private IntArrayPermuterSpliterator(PermutationRanker ranker, int[][] initialLevels,
+            int[] start, int[] end, Supplier<? extends IntIncrementalValidator> validatorFactory,
+            CheckpointManager checkpointManager, PermutationMetrics metrics)
+    {
+        Checkpointer checkpointer = checkpointManager == null ? null
+                : checkpointManager.register();
+        String initString = checkpointer == null ? null : checkpointer.initString;
+        if (initString != null && isRankCheckpointString(initString))
+        {
+            BigInteger[] range = fromRankCheckpointString(initString);
+            start = rangeStart(ranker, range[0], range[1]);
+            end = rangeEnd(ranker, range[1]);
+            initString = null;
+            initialLevels = null;
+        }
+        int maxIndex = ranker.getItemCount();
+        this.ranker = ranker;
+        this.groupStarts = groupStartBits(ranker.groupStarts());
+        this.maxIndex = maxIndex;
+        this.length = ranker.getLength();
+        this.current = new int[maxIndex];
+        this.queues = new int[Math.multiplyExact(length, maxIndex)];
+        this.heads = new int[length];
+        this.tails = new int[length];
+        this.used = new long[(maxIndex + Long.SIZE - 1) / Long.SIZE];
+        this.end = end;
+        this.view = new int[length];
+        this.validatorFactory = validatorFactory;
+        this.validator = validatorFactory == null ? null : validatorFactory.get();
+        this.checkpointer = checkpointer;
+        this.recorder = metrics == null ? null : metrics.register(length, this::recount);
+        boolean valid;
+        if (initString != null)
+            valid = initString.isEmpty() || restore(fromCheckpointString(initString));
+        else if (initialLevels != null)
+            valid = restore(initialLevels);
+        else
+            valid = start == null || fillUp(start);
+        if (depth > 0 && !(valid && fillUp(null)))
+            calculateNext();
+        remaining = countRemaining();
+        if (checkpointer != null)
+            checkpointer.checkpoint(checkpointString());
+        if (recorder != null)
+            recorder.started();
+    }
+
+    private boolean restore(int[][] levels)
+    {
+        if (levels.length > length)
+            throw new IllegalArgumentException("Too many levels for length " + length);
+        for (int[] level : levels)
+        {
+            if (level.length == 0 || level.length > maxIndex)
+                throw new IllegalArgumentException(
+                        "Invalid number of candidates for " + maxIndex + " items");
+            System.arraycopy(level, 0, queues, depth * maxIndex, level.length);
+            heads[depth] = 0;
+            tails[depth] = level.length;
+            current[depth] = level[0];
+            use(level[0]);
+            if (!push())
+                return false;
+        }
+        return true;
+    }
+
+    private void calculateNext()
+    {
+        while (true)
+        {
+            boolean valid = incrementLast();
+            if (depth == 0 || valid && fillUp(null))
+                return;
+        }
+    }
+
+    private boolean incrementLast()
+    {
+        while (true)
+        {
+            int level = depth - 1;
+            if (validator != null)
+                validator.pop();
+            release(current[level]);
+            if (++heads[level] < tails[level])
+            {
+                current[level] = queues[level * maxIndex + heads[level]];
+                use(current[level]);
+                depth = level;
+                return push();
+            }
+            if (--depth == 0)
+                return true;
+        }
+    }
+
+    /**
+     * Fills the levels below the current depth, in each case with the candidates not used at a
+     * higher level, excluding any lower than the corresponding value in {@code from} (if it is
+     * specified) and any that would take the result past the end of the range (if there is one).
+     */
+    private boolean fillUp(int[] from)
+    {
+        boolean matchesEnd = matchesEnd();
+        while (depth < length)
+        {
+            int lowest = from == null ? 0 : from[depth];
+            int highest = !matchesEnd ? maxIndex - 1
+                    : depth == length - 1 ? end[depth] - 1 : end[depth];
+            int base = depth * maxIndex;
+            int tail = lowest > highest ? 0 : addCandidates(lowest, highest, base);
+            if (tail == 0)
+                return false;
+            heads[depth] = 0;
+            tails[depth] = tail;
+            current[depth] = queues[base];
+            use(current[depth]);
+            matchesEnd = matchesEnd && current[depth] == end[depth];
+            if (!push())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Puts the candidates from {@code lowest} to {@code highest} inclusive into the queue starting
+     * at {@code base}, and returns how many there are. They are the values which are not used, and
+     * which (in a multiset) are either the first in their group or follow one which is used, so
+     * each word of candidates can be worked out from the corresponding words of the bitsets, and
+     * the candidates picked out of it one by one.
+     */
+    private int addCandidates(int lowest, int highest, int base)
+    {
+        int tail = 0;
+        int first = lowest / Long.SIZE;
+        int last = highest / Long.SIZE;
+        for (int word = first; word <= last; word++)
+        {
+            long candidates = ~used[word];
+            if (groupStarts != null)
+                candidates &= groupStarts[word] | used[word] << 1
+                        | (word == 0 ? 0 : used[word - 1] >>> Long.SIZE - 1);
+            if (word == first)
+                candidates &= -1L << lowest;
+            if (word == last)
+                candidates &= -1L >>> Long.SIZE - 1 - highest % Long.SIZE;
+            for (; candidates != 0; candidates &= candidates - 1)
+                queues[base + tail++] = word * Long.SIZE + Long.numberOfTrailingZeros(candidates);
+        }
+        return tail;
+    }
+
+    private void use(int value)
+    {
+        used[value / Long.SIZE] |= 1L << value;
+    }
+
+    private void release(int value)
+    {
+        used[value / Long.SIZE] &= ~(1L << value);
+    }
+
+    /**
+     * Converts the specified group starts (see {@link PermutationRanker#groupStarts()}) to a bitset
+     * of the values which start their groups, or null if there are none.
+     */
+    private static long[] groupStartBits(int[] groupStarts)
+    {
+        if (groupStarts == null)
+            return null;
+        long[] answer = new long[(groupStarts.length + Long.SIZE - 1) / Long.SIZE];
+        for (int i = 0; i < groupStarts.length; i++)
+            if (groupStarts[i] == i)
+                answer[i / Long.SIZE] |= 1L << i;
+        return answer;
+    }
+
+    private boolean matchesEnd()
+    {
+        if (end == null)
+            return false;
+        for (int level = 0; level < depth; level++)
+            if (current[level] != end[level])
+                return false;
+        return true;
+    }
+
+    /**
+     * Adds the level below the current depth, whose value must already be in place, to the prefix,
+     * and informs the validator (if any), through the metrics recorder (if any) so that its
+     * verdict can be recorded.
+     */
+    private boolean push()
+    {
+        int index = current[depth++];
+        return validator == null || (recorder == null ? validator.push(index)
+                : recorder.validate(validator, index, depth));
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super IntStream> action)
+    {
+        if (depth == 0)
+            return finish();
+        int[] result = new int[length];
+        next(result, 0);
+        action.accept(IntStream.of(result));
+        delivered(1);
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super IntStream> action)
+    {
+        while (depth > 0)
+        {
+            int[] result = new int[length];
+            next(result, 0);
+            action.accept(IntStream.of(result));
+            delivered(1);
+        }
+        finish();
+    }
+
+    @Override
+    public boolean tryVisit(IntPermutationConsumer action)
+    {
+        if (depth == 0)
+            return finish();
+        next(view, 0);
+        action.accept(view);
+        delivered(1);
+        return true;
+    }
+
+    @Override
+    public void visitRemaining(IntPermutationConsumer action)
+    {
+        while (depth > 0)
+        {
+            next(view, 0);
+            action.accept(view);
+            delivered(1);
+        }
+        finish();
+    }
+
+    /**
+     * Fills each batch directly from the current permutation, and checkpoints once per batch
+     * rather than once per permutation.
+     */
+    @Override
+    public void visitRemainingInBatches(int batchSize, IntPermutationBatchConsumer action)
+    {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        int[] buffer = new int[batchSize * length];
+        while (depth > 0)
+        {
+            int count = 0;
+            while (count < batchSize && depth > 0)
+                next(buffer, count++ * length);
+            action.accept(buffer, count);
+            delivered(count);
+        }
+        finish();
+    }
+
+    /**
+     * Copies the current permutation into the specified array at the specified offset, and moves
+     * on to the next. Must only be called if there is a current permutation.
+     */
+    private void next(int[] target, int offset)
+    {
+        System.arraycopy(current, 0, target, offset, length);
+        skip();
+    }
+
+    private void skip()
+    {
+        calculateNext();
+        if (depth == 0)
+            remaining = 0;
+        else if (remaining != Long.MAX_VALUE)
+            remaining--;
+    }
+
+    /**
+     * Without a validator, jumps straight to the permutation {@code count} ranks on, which takes
+     * time proportional to the length of the permutations rather than to {@code count}. With one,
+     * the permutations have to be validated to be counted, so they are stepped over one at a
+     * time, but without being copied, delivered or checkpointed. Either way, the next checkpoint
+     * is published after the next permutation delivered.
+     */
+    @Override
+    public long advanceBy(long count)
+    {
+        if (count < 0)
+            throw new IllegalArgumentException("Cannot advance by " + count);
+        if (count == 0 || depth == 0)
+            return 0;
+        if (validator != null || !hasContiguousRanks())
+        {
+            long skipped = 0;
+            while (skipped < count && depth > 0)
+            {
+                skip();
+                skipped++;
+            }
+            return skipped;
+        }
+        if (remaining != Long.MAX_VALUE && count >= remaining)
+        {
+            long skipped = remaining;
+            depth = 0;
+            remaining = 0;
+            return skipped;
+        }
+        jumpTo(ranker.unrank(ranker
+                .bigRank(Arrays.copyOf(current, length))
+                .add(BigInteger.valueOf(count))));
+        remaining = remaining == Long.MAX_VALUE ? countRemaining() : remaining - count;
+        return count;
+    }
+
+    /**
+     * Moves to the specified permutation, which must be one of those remaining, by moving to its
+     * candidate at the first level at which it differs from the current one, and filling up the
+     * levels below that afresh.
+     */
+    private void jumpTo(int[] target)
+    {
+        int level = 0;
+        while (current[level] == target[level])
+            level++;
+        int base = level * maxIndex;
+        int head = heads[level] + 1;
+        while (queues[base + head] != target[level])
+            head++;
+        for (int l = depth - 1; l >= level; l--)
+            release(current[l]);
+        heads[level] = head;
+        current[level] = target[level];
+        use(target[level]);
+        depth = level + 1;
+        fillUp(target);
+    }
+
+    /**
+     * Records the specified number of permutations as delivered, and publishes the state after
+     * them, if the checkpoint manager has asked for it, once the consumer has finished with them; a
+     * checkpoint therefore never skips a permutation that has not been processed.
+     */
+    private void delivered(int count)
+    {
+        if (recorder != null)
+            recorder.emitted(count);
+        if (checkpointer != null)
+            checkpointer.checkpointIfRequested(checkpointString);
+    }
+
+    private boolean finish()
+    {
+        if (recorder != null)
+            recorder.finished();
+        if (checkpointer != null)
+            checkpointer.deregister();
+        return false;
+    }
+
+    /**
+     * Splits off the later half of the candidates remaining at the shallowest level which has more
+     * than one, so that the two spliterators end up with roughly equal shares of the remaining work
+     * however far the enumeration has already progressed. With checkpointing, this spliterator's
+     * reduced state is published before the new one publishes its own, so that no checkpoint covers
+     * the split-off permutations twice.
+     */
+    @Override
+    public IntArrayPermuterSpliterator trySplit()
+    {
+        int[][] splitOff = null;
+        for (int level = 0; level < depth && splitOff == null; level++)
+        {
+            int remaining = tails[level] - heads[level] - 1;
+            if (remaining == 0)
+                continue;
+            int base = level * maxIndex;
+            int splitStart = tails[level] - (remaining + 1) / 2;
+            splitOff = new int[level + 1][];
+            for (int l = 0; l < level; l++)
+                splitOff[l] = new int[] { current[l] };
+            splitOff[level] = Arrays.copyOfRange(queues, base + splitStart, base + tails[level]);
+            tails[level] = splitStart;
+        }
+        if (splitOff == null)
+            return null;
+        remaining = countRemaining();
+        if (checkpointer != null)
+            checkpointer.checkpoint(checkpointString());
+        IntArrayPermuterSpliterator answer = new IntArrayPermuterSpliterator(ranker, splitOff,
+                null, end, validatorFactory, checkpointer == null ? null : checkpointer.manager(),
+                recorder == null ? null : recorder.metrics());
+        if (recorder != null)
+            recorder.splitOff(answer.recorder);
+        return answer;
+    }
+
+    /**
+     * Without a validator, the count of permutations remaining is exact: it is counted when the
+     * spliterator is created or split, and counted down as permutations are delivered. With a
+     * validator, it is an upper bound, since it includes the permutations which the validator has
+     * yet to reject.
+     */
+    @Override
+    public long estimateSize()
+    {
+        return depth == 0 ? 0 : remaining;
+    }
+
+    /**
+     * Recounts the permutations remaining if there is a validator, so that the count drops the
+     * subtrees which the validator has rejected since it was last made.
+     */
+    private long recount()
+    {
+        if (validator != null && depth > 0)
+            remaining = countRemaining();
+        return estimateSize();
+    }
+
+    private long countRemaining()
+    {
+        if (depth == 0)
+            return 0;
+        long answer = 1;
+        int[] prefix = current.clone();
+        for (int level = 0; level < depth; level++)
+        {
+            int base = level * maxIndex;
+            for (int i = heads[level] + 1; i < tails[level]; i++)
+            {
+                prefix[level] = queues[base + i];
+                answer = PermutationRanker.saturatedAdd(answer,
+                        ranker.completions(prefix, level + 1));
+            }
+            prefix[level] = current[level];
+        }
+        if (end == null || answer == Long.MAX_VALUE)
+            return answer;
+        BigInteger toEnd = ranker
+                .bigRank(end)
+                .subtract(ranker.bigRank(Arrays.copyOf(current, length)));
+        return toEnd.bitLength() < Long.SIZE ? Math.min(answer, toEnd.longValue()) : answer;
+    }
+
+    /**
+     * Reports SIZED and SUBSIZED only when the count is exact and nothing has to see the
+     * permutations go by. With a checkpoint manager or metrics attached, a stream could otherwise
+     * answer count() from the size without traversing, and the checkpointer and recorder would
+     * never deregister.
+     */
+    @Override
+    public int characteristics()
+    {
+        return validatorFactory == null && checkpointer == null && recorder == null
+                && remaining != Long.MAX_VALUE ? DISTINCT | IMMUTABLE | NONNULL | SIZED | SUBSIZED
+                : DISTINCT | IMMUTABLE | NONNULL;
+    }
+
+    @Override
+    public String toString()
+    {
+        return toString(IntStream.range(0, depth).mapToObj(this::level).map(this::toString));
+    }
+
+    private IntStream level(int level)
+    {
+        int base = level * maxIndex;
+        return Arrays.stream(queues, base + heads[level], base + tails[level]);
+    }
+
+    private String toString(IntStream str)
+    {
+        return toString(str.boxed());
+    }
+
+    private <T> String toString(Stream<T> str)
+    {
+        return "[" + str.map(Object::toString).collect(Collectors.joining(", ")) + "]";
+    }
+
+    private String checkpointString()
+    {
+        return checkpointer.getFormat() == CheckpointFormat.RANKS
+                ? toRankCheckpointString()
+                : toCheckpointString();
+    }
+
+    String toCheckpointString()
+    {
+        return IntStream
+                .range(0, depth)
+                .mapToObj(l -> level(l)
+                        .mapToObj(Integer::toString)
+                        .collect(Collectors.joining(",")))
+                .collect(Collectors.joining("/"));
+    }
+
+    /**
+     * Produces a checkpoint string in the format described in {@link CheckpointFormat#RANKS}. The
+     * permutations remaining always have a contiguous range of ranks, since splitting only ever
+     * hands over the later candidates at a level, so the range is from the rank of the current
+     * permutation to that of the first one after all the candidates left in the queues (or the end
+     * of the range, if that is earlier). A validator makes no difference, as the range includes
+     * the permutations it would reject.
+     */
+    String toRankCheckpointString()
+    {
+        if (depth == 0)
+            return "";
+        BigInteger from = ranker.bigRank(Arrays.copyOf(current, length));
+        BigInteger to = from.add(BigInteger.ONE);
+        int[] prefix = current.clone();
+        for (int level = 0; level < depth; level++)
+        {
+            int base = level * maxIndex;
+            for (int i = heads[level] + 1; i < tails[level]; i++)
+            {
+                prefix[level] = queues[base + i];
+                to = to.add(ranker.bigCompletions(prefix, level + 1));
+            }
+            prefix[level] = current[level];
+        }
+        if (end != null)
+            to = to.min(ranker.bigRank(end));
+        return from + "-" + to;
+    }
+
+    /**
+     * Whether the permutations remaining have a contiguous range of ranks, as they always do
+     * unless the spliterator was restored from a checkpoint string that no spliterator produced,
+     * such as one which lists the candidates at a level out of order. Each subtree of candidates
+     * still to be visited must start where the one before it ends.
+     */
+    private boolean hasContiguousRanks()
+    {
+        if (depth == 0)
+            return true;
+        BigInteger next = ranker.bigRank(Arrays.copyOf(current, length)).add(BigInteger.ONE);
+        int[] prefix = current.clone();
+        for (int level = depth - 1; level >= 0; level--)
+        {
+            int base = level * maxIndex;
+            for (int i = heads[level] + 1; i < tails[level]; i++)
+            {
+                prefix[level] = queues[base + i];
+                if (!ranker.bigRank(firstCompletion(prefix, level + 1)).equals(next))
+                    return false;
+                next = next.add(ranker.bigCompletions(prefix, level + 1));
+            }
+            prefix[level] = current[level];
+        }
+        return true;
+    }
+
+    private int[] firstCompletion(int[] prefix, int prefixLength)
+    {
+        int[] answer = Arrays.copyOf(prefix, length);
+        boolean[] taken = new boolean[maxIndex];
+        for (int level = 0; level < prefixLength; level++)
+            taken[prefix[level]] = true;
+        for (int i = 0, level = prefixLength; level < length; i++)
+            if (!taken[i])
+                answer[level++] = i;
+        return answer;
+    }
+
+    /**
+     * Converts the specified checkpoint string, in either format, for a spliterator whose range
+     * ends at {@code toRank}, to the rank format; returns null if the permutations remaining do
+     * not have a contiguous range of ranks. The range is worked out without the validator, so it
+     * may include permutations that the validator would reject.
+     */
+    static String toRankCheckpointString(PermutationRanker ranker, String checkpointString,
+            BigInteger toRank)
+    {
+        if (checkpointString.isEmpty() || isRankCheckpointString(checkpointString))
+            return checkpointString;
+        IntArrayPermuterSpliterator spliterator = restore(ranker, checkpointString, toRank, null,
+                null, null);
+        return spliterator.hasContiguousRanks() ? spliterator.toRankCheckpointString() : null;
+    }
+
+    /**
+     * Creates a spliterator restored from the specified checkpoint string, in either format,
+     * within a range ending at {@code toRank}. Unlike a spliterator restored from one of the
+     * checkpoint manager's init strings, which gets the string that matches the order in which it
+     * registered, it is registered with the manager (if there is one) without an init string.
+     */
+    static IntArrayPermuterSpliterator restore(PermutationRanker ranker, String checkpointString,
+            BigInteger toRank, Supplier<? extends IntIncrementalValidator> validatorFactory,
+            CheckpointManager checkpointManager, PermutationMetrics metrics)
+    {
+        if (isRankCheckpointString(checkpointString))
+        {
+            BigInteger[] range = fromRankCheckpointString(checkpointString);
+            return new IntArrayPermuterSpliterator(ranker, range[0], range[1], validatorFactory,
+                    checkpointManager, metrics);
+        }
+        int[][] levels = checkpointString.isEmpty() ? new int[0][]
+                : fromCheckpointString(checkpointString);
+        return new IntArrayPermuterSpliterator(ranker, levels, null, rangeEnd(ranker, toRank),
+                validatorFactory, checkpointManager, metrics);
+    }
+
+    static boolean isRankCheckpointString(String str)
+    {
+        return str.indexOf('-') >= 0;
+    }
+
+    static BigInteger[] fromRankCheckpointString(String str)
+    {
+        return Stream.of(str.split("-")).map(BigInteger::new).toArray(BigInteger[]::new);
+    }
+
+    static int[][] fromCheckpointString(String str)
+    {
+        return Stream
+                .of(str.split("/"))
+                .map(s -> Stream.of(s.split(",")).mapToInt(Integer::parseInt).toArray())
+                .toArray(int[][]::new);
+    }
+}
@@ -0,0 +1,25 @@
+package uk.org.thehickses.permute;
+
+/**
+ * A validator which is told about each change to the prefix being built, rather than being given
+ * the whole prefix each time, so that it can keep running state (such as a total or a set of the
+ * indices used so far) and check each extension of the prefix in constant time.
+ *
+ * Each spliterator obtains its own instance from a supplier, so an instance is only ever used by
+ * one thread at a time. When a spliterator starts, or resumes from a checkpoint, it pushes each
+ * index of its starting prefix in turn.
+ */
+public interface IntIncrementalValidator
+{
+    /**
+     * Called when the prefix is extended by the specified index. Returns false if the extended
+     * prefix, and therefore every result that starts with it, is to be rejected. The index counts
+     * as part of the prefix whatever is returned, and is removed by a later call to {@link #pop()}.
+     */
+    boolean push(int index);
+
+    /**
+     * Called when the last index is removed from the prefix.
+     */
+    void pop();
+}
@@ -0,0 +1,14 @@
+package uk.org.thehickses.permute;
+
+/**
+ * Receives permutations in batches, packed one after another into a single array of indices: the
+ * permutation at position {@code i} in a batch of permutations of length {@code n} occupies
+ * elements {@code i * n} (inclusive) to {@code (i + 1) * n} (exclusive). As with
+ * {@link IntPermutationConsumer}, the same array is passed to every call made by a given
+ * spliterator and is overwritten between calls, so it must be neither modified nor retained.
+ */
+@FunctionalInterface
+public interface IntPermutationBatchConsumer
+{
+    void accept(int[] permutations, int count);
+}
@@ -0,0 +1,13 @@
+package uk.org.thehickses.permute;
+
+/**
+ * Receives each permutation as an array of indices. The same array is passed to every call made by
+ * a given spliterator and is overwritten between calls, so it must be neither modified nor
+ * retained; copy it if it is needed after the call returns. A consumer passed to
+ * {@link Permuter#forEach(IntPermutationConsumer)} is called from several threads at once.
+ */
+@FunctionalInterface
+public interface IntPermutationConsumer
+{
+    void accept(int[] permutation);
+}
@@ -0,0 +1,54 @@
+package uk.org.thehickses.permute;
+
+import java.util.Spliterator;
+import java.util.stream.IntStream;
+
+/**
+ * A spliterator over permutations of indices which, as well as supplying each permutation as an
+ * {@link IntStream}, can pass it to an {@link IntPermutationConsumer} without allocating anything.
+ */
+public interface IntPermutationSpliterator extends Spliterator<IntStream>
+{
+    boolean tryVisit(IntPermutationConsumer action);
+
+    default void visitRemaining(IntPermutationConsumer action)
+    {
+        while (tryVisit(action))
+            ;
+    }
+
+    /**
+     * Passes the remaining permutations to the specified consumer in batches of the specified size
+     * (except that the last batch may be smaller), so that the cost of each call is spread over
+     * many permutations.
+     */
+    default void visitRemainingInBatches(int batchSize, IntPermutationBatchConsumer action)
+    {
+        PermutationBatch batch = new PermutationBatch(batchSize);
+        while (tryVisit(batch))
+            if (batch.isFull())
+                batch.deliverTo(action);
+        batch.deliverTo(action);
+    }
+
+    /**
+     * Skips over up to the specified number of permutations without passing them to a consumer,
+     * and returns the number skipped, which is less than the number specified only if the
+     * permutations ran out. This implementation steps through them; implementations which can
+     * work out where to jump to should override it.
+     */
+    default long advanceBy(long count)
+    {
+        if (count < 0)
+            throw new IllegalArgumentException("Cannot advance by " + count);
+        IntPermutationConsumer ignore = perm -> {
+        };
+        long skipped = 0;
+        while (skipped < count && tryVisit(ignore))
+            skipped++;
+        return skipped;
+    }
+
+    @Override
+    IntPermutationSpliterator trySplit();
+}
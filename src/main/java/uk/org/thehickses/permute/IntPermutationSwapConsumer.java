@@ -0,0 +1,17 @@
+package uk.org.thehickses.permute;
+
+/**
+ * Receives each permutation as an array of indices, together with the two positions whose values
+ * were swapped to turn the previous permutation produced by the same spliterator into this one; a
+ * consumer which maintains some function of the permutation can then update it rather than
+ * recalculating it. Both positions are -1 if the permutation is the first that the spliterator has
+ * produced, and so is not derived from a previous one.
+ *
+ * As with {@link IntPermutationConsumer}, the array is reused, so must be neither modified nor
+ * retained.
+ */
+@FunctionalInterface
+public interface IntPermutationSwapConsumer
+{
+    void accept(int[] permutation, int swappedPosition1, int swappedPosition2);
+}
@@ -0,0 +1,16 @@
+package uk.org.thehickses.permute;
+
+/**
+ * A validator which returns its verdict on a prefix, rather than signalling rejection by throwing
+ * a {@link ValidationException}. This avoids the cost of constructing an exception for every
+ * rejected prefix, which dominates in searches where most prefixes are rejected.
+ */
+@FunctionalInterface
+public interface IntPrefixValidator
+{
+    /**
+     * Returns whether the prefix held in the first {@code length} elements of the specified array
+     * is valid. The array is reused, so must not be modified or retained.
+     */
+    boolean isValid(int[] prefix, int length);
+}
@@ -0,0 +1,348 @@
+package uk.org.thehickses.permute;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import uk.org.thehickses.permute.PermutationMetrics.Recorder;
+
+/**
+ * Produces the permutations in the same order as {@link IntArrayPermuterSpliterator}, but with no
+ * validation and no checkpointing, by applying the classic lexicographic successor algorithm to a
+ * single array in place. This needs constant amortised time per permutation of all the items, and
+ * no memory beyond the array itself. It can still record its progress in
+ * {@link PermutationMetrics}.
+ *
+ * The permutations produced are those whose ranks, as defined by {@link PermutationRanker}, are in
+ * a range, and splitting divides the remainder of the range in two by rank.
+ *
+ * Where the permutations are arrangements of fewer than all the items, the items not chosen are
+ * kept after the chosen ones in ascending order. Reversing them before applying the successor
+ * algorithm to the whole array then moves straight to the next arrangement, but the reversal takes
+ * time proportional to the number of items not chosen, so each arrangement costs that much rather
+ * than constant amortised time.
+ */
+public class LexicographicPermuterSpliterator implements IntPermutationSpliterator
+{
+    private final PermutationRanker ranker;
+    private final int maxIndex;
+    private final int length;
+    private final int[] current;
+    private final int[] view;
+    private int[] end;
+    private long remaining;
+    private final Recorder recorder;
+
+    public LexicographicPermuterSpliterator(int maxIndex)
+    {
+        this(maxIndex, BigInteger.ZERO, new PermutationRanker(maxIndex).bigCount());
+    }
+
+    public LexicographicPermuterSpliterator(int maxIndex, long fromRank, long toRank)
+    {
+        this(maxIndex, BigInteger.valueOf(fromRank), BigInteger.valueOf(toRank));
+    }
+
+    /**
+     * Creates a spliterator which produces the permutations whose ranks are at least
+     * {@code fromRank} and less than {@code toRank}.
+     */
+    public LexicographicPermuterSpliterator(int maxIndex, BigInteger fromRank, BigInteger toRank)
+    {
+        this(new PermutationRanker(maxIndex), fromRank, toRank);
+    }
+
+    /**
+     * Creates a spliterator which produces the permutations of the items defined by the specified
+     * ranker, which must not be for a multiset, whose ranks are in the specified range.
+     */
+    public LexicographicPermuterSpliterator(PermutationRanker ranker, BigInteger fromRank,
+            BigInteger toRank)
+    {
+        this(ranker, fromRank, toRank, null);
+    }
+
+    /**
+     * As {@link #LexicographicPermuterSpliterator(PermutationRanker, BigInteger, BigInteger)}, with
+     * its progress, and that of the spliterators split off from it, recorded in the specified
+     * metrics if they are not null.
+     */
+    LexicographicPermuterSpliterator(PermutationRanker ranker, BigInteger fromRank,
+            BigInteger toRank, PermutationMetrics metrics)
+    {
+        if (ranker.groupStarts() != null)
+            throw new IllegalArgumentException("Multisets are not supported");
+        if (fromRank.signum() < 0 || toRank.compareTo(ranker.bigCount()) > 0)
+            throw new IllegalArgumentException(
+                    "Rank range " + fromRank + " to " + toRank + " is out of range");
+        if (fromRank.compareTo(toRank) > 0)
+            throw new IllegalArgumentException(
+                    "Start rank " + fromRank + " is after end rank " + toRank);
+        this.ranker = ranker;
+        this.maxIndex = ranker.getItemCount();
+        this.length = ranker.getLength();
+        this.current = withUnchosen(fromRank.equals(toRank) ? new int[0] : ranker.unrank(fromRank));
+        this.view = length == maxIndex ? current : new int[length];
+        this.end = toRank.equals(ranker.bigCount()) ? null : ranker.unrank(toRank);
+        this.remaining = length == 0 ? 0 : size(toRank.subtract(fromRank));
+        this.recorder = metrics == null ? null : metrics.register(length, this::estimateSize);
+        if (recorder != null)
+            recorder.started();
+    }
+
+    private LexicographicPermuterSpliterator(PermutationRanker ranker, int[] start, int[] end,
+            long remaining, PermutationMetrics metrics)
+    {
+        this.ranker = ranker;
+        this.maxIndex = ranker.getItemCount();
+        this.length = ranker.getLength();
+        this.current = withUnchosen(start);
+        this.view = length == maxIndex ? current : new int[length];
+        this.end = end;
+        this.remaining = remaining;
+        this.recorder = metrics == null ? null : metrics.register(length, this::estimateSize);
+        if (recorder != null)
+            recorder.started();
+    }
+
+    /**
+     * Extends the specified arrangement to a permutation of all the items, by appending the items
+     * not in it in ascending order.
+     */
+    private int[] withUnchosen(int[] arrangement)
+    {
+        int[] answer = Arrays.copyOf(arrangement, maxIndex);
+        boolean[] used = new boolean[maxIndex];
+        for (int value : arrangement)
+            used[value] = true;
+        for (int i = arrangement.length, value = 0; i < maxIndex; i++, value++)
+        {
+            while (used[value])
+                value++;
+            answer[i] = value;
+        }
+        return answer;
+    }
+
+    private static long size(BigInteger size)
+    {
+        return size.bitLength() < Long.SIZE ? size.longValue() : Long.MAX_VALUE;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super IntStream> action)
+    {
+        if (remaining == 0)
+            return finish();
+        action.accept(IntStream.of(Arrays.copyOf(current, length)));
+        advance();
+        delivered(1);
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super IntStream> action)
+    {
+        while (remaining > 0)
+        {
+            action.accept(IntStream.of(Arrays.copyOf(current, length)));
+            advance();
+            delivered(1);
+        }
+        finish();
+    }
+
+    /**
+     * Passes the next permutation to the specified consumer. Since the consumer may neither modify
+     * nor retain the array it is given, this is the array which is then advanced in place, unless
+     * the permutations are arrangements of fewer than all the items.
+     */
+    @Override
+    public boolean tryVisit(IntPermutationConsumer action)
+    {
+        if (remaining == 0)
+            return finish();
+        action.accept(visible());
+        advance();
+        delivered(1);
+        return true;
+    }
+
+    @Override
+    public void visitRemaining(IntPermutationConsumer action)
+    {
+        while (remaining > 0)
+        {
+            action.accept(visible());
+            advance();
+            delivered(1);
+        }
+        finish();
+    }
+
+    @Override
+    public void visitRemainingInBatches(int batchSize, IntPermutationBatchConsumer action)
+    {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        int[] buffer = new int[batchSize * length];
+        while (remaining > 0)
+        {
+            int count = 0;
+            while (count < batchSize && remaining > 0)
+            {
+                System.arraycopy(current, 0, buffer, count++ * length, length);
+                advance();
+            }
+            action.accept(buffer, count);
+            delivered(count);
+        }
+        finish();
+    }
+
+    private void delivered(int count)
+    {
+        if (recorder != null)
+            recorder.emitted(count);
+    }
+
+    private boolean finish()
+    {
+        if (recorder != null)
+            recorder.finished();
+        return false;
+    }
+
+    private int[] visible()
+    {
+        if (view != current)
+            System.arraycopy(current, 0, view, 0, length);
+        return view;
+    }
+
+    /**
+     * Moves to the next permutation. Where the number remaining is too large to be counted, the end
+     * of the range is instead detected by comparing with the end permutation.
+     */
+    private void advance()
+    {
+        if (remaining != Long.MAX_VALUE)
+            remaining--;
+        else if (!successor() || matchesEnd())
+            remaining = 0;
+        if (remaining > 0 && remaining != Long.MAX_VALUE)
+            successor();
+    }
+
+    private boolean matchesEnd()
+    {
+        if (end == null)
+            return false;
+        for (int i = 0; i < length; i++)
+            if (current[i] != end[i])
+                return false;
+        return true;
+    }
+
+    private boolean successor()
+    {
+        for (int lo = length, hi = maxIndex - 1; lo < hi; lo++, hi--)
+            swap(lo, hi);
+        int i = maxIndex - 2;
+        while (i >= 0 && current[i] > current[i + 1])
+            i--;
+        if (i < 0)
+            return false;
+        int j = maxIndex - 1;
+        while (current[j] < current[i])
+            j--;
+        swap(i, j);
+        for (int lo = i + 1, hi = maxIndex - 1; lo < hi; lo++, hi--)
+            swap(lo, hi);
+        return true;
+    }
+
+    private void swap(int i, int j)
+    {
+        int temp = current[i];
+        current[i] = current[j];
+        current[j] = temp;
+    }
+
+    /**
+     * Jumps straight to the permutation {@code count} ranks on, which takes time proportional to
+     * the number of items rather than to {@code count}.
+     */
+    @Override
+    public long advanceBy(long count)
+    {
+        if (count < 0)
+            throw new IllegalArgumentException("Cannot advance by " + count);
+        if (count == 0 || remaining == 0)
+            return 0;
+        if (remaining != Long.MAX_VALUE && count >= remaining)
+        {
+            long skipped = remaining;
+            remaining = 0;
+            return skipped;
+        }
+        BigInteger toRank = end == null ? ranker.bigCount() : ranker.bigRank(end);
+        BigInteger target = ranker
+                .bigRank(Arrays.copyOf(current, length))
+                .add(BigInteger.valueOf(count));
+        if (target.compareTo(toRank) >= 0)
+        {
+            remaining = 0;
+            return count - target.subtract(toRank).longValueExact();
+        }
+        System.arraycopy(withUnchosen(ranker.unrank(target)), 0, current, 0, maxIndex);
+        remaining = remaining == Long.MAX_VALUE ? size(toRank.subtract(target)) : remaining - count;
+        return count;
+    }
+
+    /**
+     * Splits off the later half of the remaining range of ranks.
+     */
+    @Override
+    public LexicographicPermuterSpliterator trySplit()
+    {
+        if (remaining < 2)
+            return null;
+        BigInteger fromRank = ranker.bigRank(Arrays.copyOf(current, length));
+        BigInteger toRank = end == null ? ranker.bigCount() : ranker.bigRank(end);
+        BigInteger size = toRank.subtract(fromRank);
+        if (size.compareTo(BigInteger.ONE) <= 0)
+            return null;
+        BigInteger midRank = fromRank.add(size.shiftRight(1));
+        int[] mid = ranker.unrank(midRank);
+        LexicographicPermuterSpliterator answer = new LexicographicPermuterSpliterator(ranker, mid,
+                end, size(toRank.subtract(midRank)), recorder == null ? null : recorder.metrics());
+        end = mid;
+        remaining = size(midRank.subtract(fromRank));
+        if (recorder != null)
+            recorder.splitOff(answer.recorder);
+        return answer;
+    }
+
+    @Override
+    public long estimateSize()
+    {
+        return remaining;
+    }
+
+    @Override
+    public int characteristics()
+    {
+        return recorder == null && remaining != Long.MAX_VALUE
+                ? DISTINCT | IMMUTABLE | NONNULL | SIZED | SUBSIZED
+                : DISTINCT | IMMUTABLE | NONNULL;
+    }
+
+    @Override
+    public String toString()
+    {
+        return Arrays.toString(Arrays.copyOf(current, length)) + " to "
+                + (end == null ? "end" : Arrays.toString(end));
+    }
+}
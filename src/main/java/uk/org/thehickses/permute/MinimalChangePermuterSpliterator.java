@@ -0,0 +1,197 @@
+package uk.org.thehickses.permute;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Produces the permutations in an order in which each differs from the previous one by the
+ * swapping of two positions, which are reported to an {@link IntPermutationSwapConsumer}.
+ *
+ * The first {@code fixed} positions of the permutation are the same throughout. The values
+ * remaining to be placed at the next position are held in {@code candidates}, from {@code head}
+ * (the value currently there) to {@code tail} (exclusive); for each of them, the positions after it
+ * are permuted by Heap's algorithm, whose state is held in {@code counters} and {@code position}.
+ * Moving from one candidate to the next is also a single swap, since the next candidate is always
+ * somewhere in the later positions.
+ *
+ * Splitting hands over half of the candidates not yet placed. If there are none, but nothing has
+ * been produced for the current candidate, it first fixes one more position, so that the
+ * permutations of the later positions can be shared out instead.
+ */
+public class MinimalChangePermuterSpliterator implements IntPermutationSpliterator
+{
+    private final int maxIndex;
+    private final int[] current;
+    private int fixed;
+    private int[] candidates;
+    private int head;
+    private int tail;
+    private final int[] counters;
+    private int position;
+    private int swapped1;
+    private int swapped2;
+    private boolean started;
+    private boolean finished;
+    private long remainingInRun;
+
+    public MinimalChangePermuterSpliterator(int maxIndex)
+    {
+        this(maxIndex, new int[0], IntStream.range(0, maxIndex).toArray());
+    }
+
+    private MinimalChangePermuterSpliterator(int maxIndex, int[] prefix, int[] candidates)
+    {
+        this.maxIndex = maxIndex;
+        this.current = new int[maxIndex];
+        this.counters = new int[maxIndex];
+        this.fixed = prefix.length;
+        this.candidates = candidates;
+        this.tail = candidates.length;
+        this.swapped1 = this.swapped2 = -1;
+        this.finished = candidates.length == 0;
+        boolean[] used = new boolean[maxIndex];
+        System.arraycopy(prefix, 0, current, 0, fixed);
+        for (int value : prefix)
+            used[value] = true;
+        if (!finished)
+        {
+            current[fixed] = candidates[0];
+            used[candidates[0]] = true;
+            startRun();
+        }
+        for (int i = fixed + 1, value = 0; i < maxIndex; i++, value++)
+        {
+            while (used[value])
+                value++;
+            current[i] = value;
+        }
+    }
+
+    private void startRun()
+    {
+        position = 1;
+        remainingInRun = PermutationRanker.factorial(maxIndex - fixed - 1);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super IntStream> action)
+    {
+        if (finished)
+            return false;
+        action.accept(IntStream.of(current.clone()));
+        advance();
+        return true;
+    }
+
+    @Override
+    public boolean tryVisit(IntPermutationConsumer action)
+    {
+        if (finished)
+            return false;
+        action.accept(current);
+        advance();
+        return true;
+    }
+
+    public boolean tryVisit(IntPermutationSwapConsumer action)
+    {
+        if (finished)
+            return false;
+        action.accept(current, swapped1, swapped2);
+        advance();
+        return true;
+    }
+
+    public void visitRemaining(IntPermutationSwapConsumer action)
+    {
+        while (tryVisit(action))
+            ;
+    }
+
+    private void advance()
+    {
+        started = true;
+        if (remainingInRun != Long.MAX_VALUE)
+            remainingInRun--;
+        int base = fixed + 1;
+        int length = maxIndex - base;
+        while (position < length)
+        {
+            if (counters[position] < position)
+            {
+                swap(base + (position % 2 == 0 ? 0 : counters[position]), base + position);
+                counters[position]++;
+                position = 1;
+                return;
+            }
+            counters[position++] = 0;
+        }
+        if (++head == tail)
+        {
+            finished = true;
+            return;
+        }
+        int next = base;
+        while (current[next] != candidates[head])
+            next++;
+        swap(fixed, next);
+        startRun();
+        started = false;
+    }
+
+    private void swap(int i, int j)
+    {
+        int temp = current[i];
+        current[i] = current[j];
+        current[j] = temp;
+        swapped1 = i;
+        swapped2 = j;
+    }
+
+    @Override
+    public MinimalChangePermuterSpliterator trySplit()
+    {
+        if (finished)
+            return null;
+        if (tail - head == 1 && !started && maxIndex - fixed > 2)
+        {
+            fixed++;
+            candidates = Arrays.copyOfRange(current, fixed, maxIndex);
+            head = 0;
+            tail = candidates.length;
+            startRun();
+        }
+        int pending = tail - head - 1;
+        if (pending == 0)
+            return null;
+        int splitStart = tail - (pending + 1) / 2;
+        MinimalChangePermuterSpliterator answer = new MinimalChangePermuterSpliterator(maxIndex,
+                Arrays.copyOf(current, fixed), Arrays.copyOfRange(candidates, splitStart, tail));
+        tail = splitStart;
+        return answer;
+    }
+
+    @Override
+    public long estimateSize()
+    {
+        if (finished)
+            return 0;
+        return PermutationRanker.saturatedAdd(remainingInRun, PermutationRanker.saturatedMultiply(
+                tail - head - 1, PermutationRanker.factorial(maxIndex - fixed - 1)));
+    }
+
+    @Override
+    public int characteristics()
+    {
+        return PermutationRanker.factorial(maxIndex - fixed) != Long.MAX_VALUE
+                ? DISTINCT | IMMUTABLE | NONNULL | SIZED | SUBSIZED
+                : DISTINCT | IMMUTABLE | NONNULL;
+    }
+
+    @Override
+    public String toString()
+    {
+        return Arrays.toString(current);
+    }
+}
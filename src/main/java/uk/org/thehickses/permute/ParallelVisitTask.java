@@ -0,0 +1,59 @@
+package uk.org.thehickses.permute;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Visits all the permutations of a spliterator in parallel, by splitting it until the pieces are
+ * small enough to give each thread in the pool a few of them, and then visiting each piece on a
+ * single thread.
+ */
+@SuppressWarnings("serial")
+class ParallelVisitTask<S extends Spliterator<?>> extends RecursiveAction
+{
+    private final S spliterator;
+    private final UnaryOperator<S> splitter;
+    private final Consumer<? super S> visitor;
+    private final long threshold;
+
+    static <S extends Spliterator<?>> void visit(S spliterator, UnaryOperator<S> splitter,
+            Consumer<? super S> visitor)
+    {
+        ForkJoinPool pool = ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool()
+                : ForkJoinPool.commonPool();
+        long threshold = Math.max(1, spliterator.estimateSize() / (pool.getParallelism() << 2));
+        new ParallelVisitTask<>(spliterator, splitter, visitor, threshold).invoke();
+    }
+
+    private ParallelVisitTask(S spliterator, UnaryOperator<S> splitter,
+            Consumer<? super S> visitor, long threshold)
+    {
+        this.spliterator = spliterator;
+        this.splitter = splitter;
+        this.visitor = visitor;
+        this.threshold = threshold;
+    }
+
+    @Override
+    protected void compute()
+    {
+        List<ParallelVisitTask<S>> forked = new ArrayList<>();
+        S split;
+        while (spliterator.estimateSize() > threshold
+                && (split = splitter.apply(spliterator)) != null)
+        {
+            ParallelVisitTask<S> task = new ParallelVisitTask<>(split, splitter, visitor,
+                    threshold);
+            task.fork();
+            forked.add(task);
+        }
+        visitor.accept(spliterator);
+        forked.forEach(ForkJoinTask::join);
+    }
+}
@@ -0,0 +1,41 @@
+package uk.org.thehickses.permute;
+
+/**
+ * Gathers permutations passed to it one at a time into a reusable buffer, which is allocated when
+ * the first permutation arrives and its length is known, and delivers them in batches.
+ */
+class PermutationBatch implements IntPermutationConsumer
+{
+    private final int batchSize;
+    private int[] buffer;
+    private int count = 0;
+
+    PermutationBatch(int batchSize)
+    {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void accept(int[] permutation)
+    {
+        if (buffer == null)
+            buffer = new int[batchSize * permutation.length];
+        System.arraycopy(permutation, 0, buffer, count++ * permutation.length,
+                permutation.length);
+    }
+
+    boolean isFull()
+    {
+        return count == batchSize;
+    }
+
+    void deliverTo(IntPermutationBatchConsumer action)
+    {
+        if (count == 0)
+            return;
+        action.accept(buffer, count);
+        count = 0;
+    }
+}
@@ -0,0 +1,333 @@
+package uk.org.thehickses.permute;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the progress of a run, for a permuter to which it has been given (see
+ * {@link Permuter#withMetrics(PermutationMetrics)}). The figures can be polled through the getters,
+ * or exported by registering the instance as an MXBean, for instance:
+ *
+ * <pre>
+ * ManagementFactory.getPlatformMBeanServer().registerMBean(metrics,
+ *         new ObjectName("uk.org.thehickses.permute:type=PermutationMetrics,name=job"));
+ * </pre>
+ *
+ * Each spliterator records its progress in a {@link Recorder} of its own, on its own thread, and
+ * only adds it to the shared totals, which are {@link LongAdder}s so that threads do not contend,
+ * every few thousand permutations. Each call to a getter also asks the spliterators to add their
+ * progress the next time they deliver a permutation, in the same way that
+ * {@link CheckpointManager} asks for checkpoints, so a figure is no more out of date than the time
+ * since the previous call, and a spliterator whose figures do not change between two calls is not
+ * delivering permutations at all.
+ *
+ * The remaining work is the sum of the {@link IntPermutationSpliterator#estimateSize()} of the
+ * live spliterators. Like the estimates, it includes any permutations that a validator will
+ * reject, and it saturates at {@link Long#MAX_VALUE}. The estimated time remaining is based on the
+ * rate at which the remaining work has been falling, which takes account of the permutations
+ * rejected as well as those emitted.
+ *
+ * In profiling mode, each call to the validator is also counted and timed, by prefix length (see
+ * {@link ValidatorProfile}). Each recorder keeps its own figures, so profiling adds no contention,
+ * and merges them into the totals when its spliterator finishes; when the last live spliterator
+ * finishes, the profile is logged. Timing each call costs two reads of {@link System#nanoTime()},
+ * so profiling is best used on a representative part of a run rather than all of it.
+ */
+public class PermutationMetrics implements PermutationMetricsMXBean
+{
+    private static final Logger LOG = LoggerFactory.getLogger(PermutationMetrics.class);
+    private static final int FLUSH_INTERVAL = 4096;
+
+    private final boolean profiling;
+    private long[] validations = new long[0];
+    private long[] rejections = new long[0];
+    private long[] validationNanos = new long[0];
+
+    private final LongAdder emitted = new LongAdder();
+    private final LongAdder splits = new LongAdder();
+    private final LongAdder covered = new LongAdder();
+    private final Set<Recorder> live = ConcurrentHashMap.newKeySet();
+    private final AtomicLong startTime = new AtomicLong();
+    private volatile LongAdder[] pruned = new LongAdder[0];
+    private volatile long pollCount = 0;
+
+    public PermutationMetrics()
+    {
+        this(false);
+    }
+
+    /**
+     * Creates metrics which, if {@code profileValidators} is true, also profile the validator.
+     */
+    public PermutationMetrics(boolean profileValidators)
+    {
+        this.profiling = profileValidators;
+    }
+
+    /**
+     * Registers a spliterator which produces permutations of the specified length, and whose
+     * estimated size is given by the specified supplier, and gets the recorder through which it
+     * reports its progress. The spliterator must call {@link Recorder#started()} once it is ready
+     * to report its estimated size; until then, its estimated size is taken to be zero, but it can
+     * already report the prefixes it rejects.
+     */
+    Recorder register(int length, LongSupplier sizeEstimate)
+    {
+        startTime.compareAndSet(0, System.nanoTime());
+        if (pruned.length < length)
+            growPruned(length);
+        Recorder answer = new Recorder(length, sizeEstimate);
+        live.add(answer);
+        return answer;
+    }
+
+    private synchronized void growPruned(int length)
+    {
+        int oldLength = pruned.length;
+        if (oldLength >= length)
+            return;
+        LongAdder[] newPruned = Arrays.copyOf(pruned, length);
+        for (int depth = oldLength; depth < length; depth++)
+            newPruned[depth] = new LongAdder();
+        pruned = newPruned;
+    }
+
+    /**
+     * Removes a recorder whose spliterator has finished, and adds its validator profile to the
+     * totals; logs the profile if there are no live spliterators left.
+     */
+    private synchronized void merge(Recorder recorder)
+    {
+        live.remove(recorder);
+        validations = add(validations, recorder.validations);
+        rejections = add(rejections, recorder.rejections);
+        validationNanos = add(validationNanos, recorder.nanos);
+        if (live.isEmpty())
+            LOG.info("Validator profile:\n{}", getValidatorProfile());
+    }
+
+    private static long[] add(long[] totals, long[] values)
+    {
+        long[] answer = totals.length >= values.length ? totals
+                : Arrays.copyOf(totals, values.length);
+        for (int i = 0; i < values.length; i++)
+            answer[i] += values[i];
+        return answer;
+    }
+
+    /**
+     * Gets the validator profile of the spliterators that have finished so far, or null if these
+     * metrics are not in profiling mode.
+     */
+    public synchronized ValidatorProfile getValidatorProfile()
+    {
+        return profiling ? new ValidatorProfile(validations, rejections, validationNanos) : null;
+    }
+
+    /**
+     * Gets the number of calls to the validator for each length of prefix, as for
+     * {@link #getPrefixesPruned()}, made by the spliterators that have finished so far; empty
+     * unless these metrics are in profiling mode.
+     */
+    @Override
+    public synchronized long[] getValidations()
+    {
+        return validations.clone();
+    }
+
+    /**
+     * Gets the time taken by the calls counted by {@link #getValidations()}, in nanoseconds.
+     */
+    @Override
+    public synchronized long[] getValidationNanos()
+    {
+        return validationNanos.clone();
+    }
+
+    private void poll()
+    {
+        pollCount++;
+    }
+
+    @Override
+    public long getPermutationsEmitted()
+    {
+        poll();
+        return emitted.sum();
+    }
+
+    /**
+     * Gets the number of prefixes rejected by the validator at each depth: the element at index
+     * {@code i} is the number of prefixes of length {@code i + 1}.
+     */
+    @Override
+    public long[] getPrefixesPruned()
+    {
+        poll();
+        return Arrays.stream(pruned).mapToLong(LongAdder::sum).toArray();
+    }
+
+    @Override
+    public int getLiveSpliteratorCount()
+    {
+        return live.size();
+    }
+
+    @Override
+    public long getSplitCount()
+    {
+        return splits.sum();
+    }
+
+    @Override
+    public long getEstimatedRemaining()
+    {
+        poll();
+        return live.stream().mapToLong(r -> r.estimate).reduce(0, PermutationRanker::saturatedAdd);
+    }
+
+    @Override
+    public long getElapsedMillis()
+    {
+        long start = startTime.get();
+        return start == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * Gets the number of permutations emitted per second since the first spliterator registered.
+     */
+    @Override
+    public double getRate()
+    {
+        long elapsed = getElapsedMillis();
+        return elapsed == 0 ? 0 : getPermutationsEmitted() * 1000.0 / elapsed;
+    }
+
+    /**
+     * Gets the estimated time in milliseconds until the run completes, or -1 if there has not yet
+     * been enough progress to estimate it or the remaining work is too large to count.
+     */
+    @Override
+    public long getEstimatedMillisRemaining()
+    {
+        long remaining = getEstimatedRemaining();
+        long done = covered.sum();
+        if (remaining == 0)
+            return 0;
+        if (done <= 0 || remaining == Long.MAX_VALUE)
+            return -1;
+        return (long) ((double) remaining * getElapsedMillis() / done);
+    }
+
+    /**
+     * Records the progress of a single spliterator, which must only be used by the thread that is
+     * using the spliterator.
+     */
+    class Recorder
+    {
+        private final LongSupplier sizeEstimate;
+        private final long[] validations;
+        private final long[] rejections;
+        private final long[] nanos;
+        private volatile long estimate = 0;
+        private long unflushed = 0;
+        private long givenAway = 0;
+        private long pollsAnswered;
+        private boolean finished = false;
+
+        private Recorder(int length, LongSupplier sizeEstimate)
+        {
+            this.sizeEstimate = sizeEstimate;
+            this.validations = profiling ? new long[length] : null;
+            this.rejections = profiling ? new long[length] : null;
+            this.nanos = profiling ? new long[length] : null;
+            this.pollsAnswered = pollCount;
+        }
+
+        void started()
+        {
+            estimate = sizeEstimate.getAsLong();
+        }
+
+        PermutationMetrics metrics()
+        {
+            return PermutationMetrics.this;
+        }
+
+        void emitted(int count)
+        {
+            unflushed += count;
+            if (unflushed >= FLUSH_INTERVAL || pollsAnswered != pollCount)
+                flush();
+        }
+
+        /**
+         * Passes the specified index to the specified validator, as the last of a prefix of the
+         * specified length, and records the result, and in profiling mode the time taken.
+         */
+        boolean validate(IntIncrementalValidator validator, int index, int prefixLength)
+        {
+            boolean valid;
+            if (!profiling)
+                valid = validator.push(index);
+            else
+            {
+                long start = System.nanoTime();
+                valid = validator.push(index);
+                nanos[prefixLength - 1] += System.nanoTime() - start;
+                validations[prefixLength - 1]++;
+                if (!valid)
+                    rejections[prefixLength - 1]++;
+            }
+            if (!valid)
+                pruned[prefixLength - 1].increment();
+            return valid;
+        }
+
+        /**
+         * Records that the spliterator has split off the one which reports to the specified
+         * recorder, so that the work handed over to it does not count as work done.
+         */
+        void splitOff(Recorder child)
+        {
+            splits.increment();
+            givenAway += child.estimate;
+            flush();
+        }
+
+        /**
+         * Records that the spliterator has finished; does nothing if it has already done so.
+         */
+        void finished()
+        {
+            if (finished)
+                return;
+            finished = true;
+            flush();
+            if (profiling)
+                merge(this);
+            else
+                live.remove(this);
+        }
+
+        private void flush()
+        {
+            pollsAnswered = pollCount;
+            emitted.add(unflushed);
+            unflushed = 0;
+            long newEstimate = finished ? 0 : sizeEstimate.getAsLong();
+            if (estimate != Long.MAX_VALUE && givenAway != Long.MAX_VALUE)
+                covered.add(estimate - newEstimate - givenAway);
+            givenAway = 0;
+            estimate = newEstimate;
+        }
+    }
+}
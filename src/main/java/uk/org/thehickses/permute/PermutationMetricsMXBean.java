@@ -0,0 +1,28 @@
+package uk.org.thehickses.permute;
+
+/**
+ * The management interface of {@link PermutationMetrics}, through which the progress of a run can
+ * be monitored over JMX.
+ */
+public interface PermutationMetricsMXBean
+{
+    long getPermutationsEmitted();
+
+    long[] getPrefixesPruned();
+
+    long[] getValidations();
+
+    long[] getValidationNanos();
+
+    int getLiveSpliteratorCount();
+
+    long getSplitCount();
+
+    long getEstimatedRemaining();
+
+    long getElapsedMillis();
+
+    double getRate();
+
+    long getEstimatedMillisRemaining();
+}
@@ -0,0 +1,20 @@
+package uk.org.thehickses.permute;
+
+/**
+ * The orders in which a {@link Permuter} can produce permutations.
+ */
+public enum PermutationOrder
+{
+    /**
+     * Ascending lexicographic order of the indices of the items, as defined by
+     * {@link PermutationRanker}. This is the default, and the only order that supports validation,
+     * checkpointing and sharding.
+     */
+    LEXICOGRAPHIC,
+
+    /**
+     * An order in which each permutation differs from the previous one by the swapping of two
+     * items, as produced by {@link MinimalChangePermuterSpliterator}.
+     */
+    MINIMAL_CHANGE
+}
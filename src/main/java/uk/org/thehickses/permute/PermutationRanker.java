@@ -0,0 +1,396 @@
+package uk.org.thehickses.permute;
+
+import java.math.BigInteger;
+
+/**
+ * Converts between permutations of the indices {@code 0} to {@code itemCount - 1} and their ranks,
+ * that is their positions (counting from zero) in the lexicographic order in which the
+ * spliterators produce them when no validator is in use. Both directions take time proportional to
+ * the square of the item count rather than to the rank, so any permutation can be reached without
+ * enumerating the ones before it.
+ *
+ * The {@code long} variants throw {@link ArithmeticException} if the value concerned does not fit
+ * in a {@code long}, which is always possible for up to 20 items; the {@link BigInteger} variants
+ * work for any number of items.
+ *
+ * A ranker can also be created for the k-permutations of the items, that is the arrangements of
+ * {@code length} of them, in which case the permutations ranked have {@code length} elements.
+ *
+ * A ranker can also be created for a multiset, in which the items fall into groups of equal items
+ * which are interchangeable. The items of each group have consecutive indices, and only the
+ * permutations in which the indices of each group appear in ascending order are counted, so that
+ * each distinct arrangement of the items corresponds to exactly one permutation.
+ */
+public class PermutationRanker
+{
+    static final int MAX_LONG_ITEM_COUNT = 20;
+    private static final long[] FACTORIALS = factorials();
+
+    private final int itemCount;
+    private final int length;
+    private final int[] groupSizes;
+    private final int[] groupOf;
+    private final int[] groupStarts;
+
+    public PermutationRanker(int itemCount)
+    {
+        this(itemCount, itemCount);
+    }
+
+    /**
+     * Creates a ranker for the arrangements of {@code length} of the specified number of items.
+     */
+    public PermutationRanker(int itemCount, int length)
+    {
+        if (itemCount < 0)
+            throw new IllegalArgumentException("Item count must not be negative");
+        if (length < 0 || length > itemCount)
+            throw new IllegalArgumentException(
+                    "Length " + length + " is out of range for " + itemCount + " items");
+        this.itemCount = itemCount;
+        this.length = length;
+        this.groupSizes = this.groupOf = this.groupStarts = null;
+    }
+
+    /**
+     * Creates a ranker for a multiset, whose groups of equal items have the specified sizes. The
+     * first group comprises the items with the lowest indices, and so on.
+     */
+    public PermutationRanker(int[] groupSizes)
+    {
+        int count = 0;
+        boolean distinct = true;
+        for (int size : groupSizes)
+        {
+            if (size < 1)
+                throw new IllegalArgumentException("Group sizes must be positive");
+            count += size;
+            distinct = distinct && size == 1;
+        }
+        this.itemCount = count;
+        this.length = count;
+        if (distinct)
+        {
+            this.groupSizes = this.groupOf = this.groupStarts = null;
+            return;
+        }
+        this.groupSizes = groupSizes.clone();
+        this.groupOf = new int[count];
+        this.groupStarts = new int[count];
+        for (int group = 0, index = 0; group < groupSizes.length; group++)
+            for (int start = index; index < start + groupSizes[group]; index++)
+            {
+                groupOf[index] = group;
+                groupStarts[index] = start;
+            }
+    }
+
+    public int getItemCount()
+    {
+        return itemCount;
+    }
+
+    public int getLength()
+    {
+        return length;
+    }
+
+    public long count()
+    {
+        if (groupSizes != null)
+            return bigCount().longValueExact();
+        return exactArrangements(itemCount, length);
+    }
+
+    public BigInteger bigCount()
+    {
+        if (groupSizes != null)
+            return bigMultinomial(groupSizes, itemCount);
+        return bigArrangements(itemCount, length);
+    }
+
+    public long rank(int[] permutation)
+    {
+        if (groupSizes != null)
+            return bigRank(permutation).longValueExact();
+        boolean[] used = new boolean[itemCount];
+        long answer = 0;
+        for (int position = 0; position < length; position++)
+        {
+            int digit = digit(permutation, position, used);
+            if (digit > 0)
+                answer = Math.addExact(answer, Math.multiplyExact(digit,
+                        exactArrangements(itemCount - position - 1, length - position - 1)));
+        }
+        return answer;
+    }
+
+    public BigInteger bigRank(int[] permutation)
+    {
+        if (groupSizes != null)
+            return multisetRank(permutation);
+        boolean[] used = new boolean[itemCount];
+        BigInteger answer = BigInteger.ZERO;
+        for (int position = 0; position < length; position++)
+        {
+            int digit = digit(permutation, position, used);
+            if (digit > 0)
+                answer = answer
+                        .add(bigArrangements(itemCount - position - 1, length - position - 1)
+                                .multiply(BigInteger.valueOf(digit)));
+        }
+        return answer;
+    }
+
+    private int digit(int[] permutation, int position, boolean[] used)
+    {
+        if (permutation.length != length)
+            throw new IllegalArgumentException(
+                    "Permutation has " + permutation.length + " elements, expected " + length);
+        int value = permutation[position];
+        if (value < 0 || value >= itemCount || used[value])
+            throw new IllegalArgumentException("Not a permutation of " + itemCount + " items");
+        used[value] = true;
+        int answer = 0;
+        for (int i = 0; i < value; i++)
+            if (!used[i])
+                answer++;
+        return answer;
+    }
+
+    public int[] unrank(long rank)
+    {
+        if (groupSizes != null)
+            return unrank(BigInteger.valueOf(rank));
+        long count = arrangements(itemCount, length);
+        if (rank < 0 || count != Long.MAX_VALUE && rank >= count)
+            throw new IllegalArgumentException("Rank " + rank + " is out of range");
+        int[] digits = new int[length];
+        for (int position = length - 1; position >= 0; position--)
+        {
+            int radix = itemCount - position;
+            digits[position] = (int) (rank % radix);
+            rank /= radix;
+        }
+        return fromDigits(digits);
+    }
+
+    public int[] unrank(BigInteger rank)
+    {
+        if (rank.signum() < 0 || rank.compareTo(bigCount()) >= 0)
+            throw new IllegalArgumentException("Rank " + rank + " is out of range");
+        if (groupSizes != null)
+            return multisetUnrank(rank);
+        if (rank.bitLength() < Long.SIZE)
+            return unrank(rank.longValue());
+        int[] digits = new int[length];
+        for (int position = length - 1; position >= 0; position--)
+        {
+            int radix = itemCount - position;
+            BigInteger[] divRem = rank.divideAndRemainder(BigInteger.valueOf(radix));
+            digits[position] = divRem[1].intValue();
+            rank = divRem[0];
+        }
+        return fromDigits(digits);
+    }
+
+    private int[] fromDigits(int[] digits)
+    {
+        boolean[] used = new boolean[itemCount];
+        int[] answer = new int[length];
+        for (int position = 0; position < length; position++)
+        {
+            int value = -1;
+            for (int skip = digits[position]; skip >= 0; skip--)
+                while (used[++value])
+                    ;
+            used[value] = true;
+            answer[position] = value;
+        }
+        return answer;
+    }
+
+    private BigInteger multisetRank(int[] permutation)
+    {
+        if (permutation.length != itemCount)
+            throw new IllegalArgumentException(
+                    "Permutation has " + permutation.length + " elements, expected " + itemCount);
+        int[] remaining = groupSizes.clone();
+        BigInteger answer = BigInteger.ZERO;
+        for (int position = 0; position < itemCount; position++)
+        {
+            int value = permutation[position];
+            if (value < 0 || value >= itemCount)
+                throw new IllegalArgumentException("Not a permutation of " + itemCount + " items");
+            int group = groupOf[value];
+            if (value != groupStarts[value] + groupSizes[group] - remaining[group])
+                throw new IllegalArgumentException(
+                        "Not a permutation in which equal items are in ascending order");
+            for (int g = 0; g < group; g++)
+                if (remaining[g] > 0)
+                {
+                    remaining[g]--;
+                    answer = answer.add(bigMultinomial(remaining, itemCount - position - 1));
+                    remaining[g]++;
+                }
+            remaining[group]--;
+        }
+        return answer;
+    }
+
+    private int[] multisetUnrank(BigInteger rank)
+    {
+        int[] remaining = groupSizes.clone();
+        int[] answer = new int[itemCount];
+        int[] starts = new int[groupSizes.length];
+        for (int group = 1; group < starts.length; group++)
+            starts[group] = starts[group - 1] + groupSizes[group - 1];
+        for (int position = 0; position < itemCount; position++)
+        {
+            for (int group = 0;; group++)
+            {
+                if (remaining[group] == 0)
+                    continue;
+                remaining[group]--;
+                BigInteger count = bigMultinomial(remaining, itemCount - position - 1);
+                if (rank.compareTo(count) < 0)
+                {
+                    answer[position] = starts[group] + groupSizes[group] - remaining[group] - 1;
+                    break;
+                }
+                rank = rank.subtract(count);
+                remaining[group]++;
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Gets, for each index, the lowest index in its group, or null if the items are distinct.
+     */
+    int[] groupStarts()
+    {
+        return groupStarts;
+    }
+
+    /**
+     * Gets the number of permutations which start with the first {@code length} elements of the
+     * specified prefix, saturating at {@link Long#MAX_VALUE}.
+     */
+    long completions(int[] prefix, int length)
+    {
+        if (groupSizes == null)
+            return arrangements(itemCount - length, this.length - length);
+        int[] remaining = remainingGroupSizes(prefix, length);
+        int total = itemCount - length;
+        if (total < FACTORIALS.length)
+        {
+            long answer = FACTORIALS[total];
+            for (int count : remaining)
+                answer /= FACTORIALS[count];
+            return answer;
+        }
+        BigInteger answer = bigMultinomial(remaining, total);
+        return answer.bitLength() < Long.SIZE ? answer.longValue() : Long.MAX_VALUE;
+    }
+
+    /**
+     * As {@link #completions(int[], int)}, but exact however large the number.
+     */
+    BigInteger bigCompletions(int[] prefix, int length)
+    {
+        if (groupSizes == null)
+            return bigArrangements(itemCount - length, this.length - length);
+        return bigMultinomial(remainingGroupSizes(prefix, length), itemCount - length);
+    }
+
+    private int[] remainingGroupSizes(int[] prefix, int length)
+    {
+        int[] remaining = groupSizes.clone();
+        for (int position = 0; position < length; position++)
+            remaining[groupOf[prefix[position]]]--;
+        return remaining;
+    }
+
+    private static BigInteger bigMultinomial(int[] counts, int total)
+    {
+        BigInteger answer = bigFactorial(total);
+        for (int count : counts)
+            if (count > 1)
+                answer = answer.divide(bigFactorial(count));
+        return answer;
+    }
+
+    static long factorial(int n)
+    {
+        return n < FACTORIALS.length ? FACTORIALS[n] : Long.MAX_VALUE;
+    }
+
+    static long saturatedAdd(long a, long b)
+    {
+        if (Long.MAX_VALUE - a < b)
+            return Long.MAX_VALUE;
+        return a + b;
+    }
+
+    static long saturatedMultiply(long a, long b)
+    {
+        if (a == 0 || b == 0)
+            return 0;
+        if (Long.MAX_VALUE / a < b)
+            return Long.MAX_VALUE;
+        return a * b;
+    }
+
+    /**
+     * Gets the number of arrangements of {@code r} out of {@code n} items, saturating at
+     * {@link Long#MAX_VALUE}.
+     */
+    static long arrangements(int n, int r)
+    {
+        if (n < FACTORIALS.length)
+            return FACTORIALS[n] / FACTORIALS[n - r];
+        long answer = 1;
+        for (int i = n - r + 1; i <= n; i++)
+            answer = saturatedMultiply(answer, i);
+        return answer;
+    }
+
+    private static long exactArrangements(int n, int r)
+    {
+        long answer = arrangements(n, r);
+        if (answer == Long.MAX_VALUE)
+            throw new ArithmeticException("Number of arrangements of " + r + " of " + n
+                    + " items does not fit in a long");
+        return answer;
+    }
+
+    private static BigInteger bigArrangements(int n, int r)
+    {
+        if (n < FACTORIALS.length)
+            return BigInteger.valueOf(FACTORIALS[n] / FACTORIALS[n - r]);
+        BigInteger answer = BigInteger.ONE;
+        for (int i = n - r + 1; i <= n; i++)
+            answer = answer.multiply(BigInteger.valueOf(i));
+        return answer;
+    }
+
+    private static BigInteger bigFactorial(int n)
+    {
+        if (n < FACTORIALS.length)
+            return BigInteger.valueOf(FACTORIALS[n]);
+        BigInteger answer = BigInteger.valueOf(FACTORIALS[FACTORIALS.length - 1]);
+        for (int i = FACTORIALS.length; i <= n; i++)
+            answer = answer.multiply(BigInteger.valueOf(i));
+        return answer;
+    }
+
+    private static long[] factorials()
+    {
+        long[] answer = new long[MAX_LONG_ITEM_COUNT + 1];
+        answer[0] = 1;
+        for (int i = 1; i < answer.length; i++)
+            answer[i] = answer[i - 1] * i;
+        return answer;
+    }
+}
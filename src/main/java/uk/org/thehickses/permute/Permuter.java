@@ -1,6 +1,16 @@
 package uk.org.thehickses.permute;
 
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiPredicate;
+import java.util.function.Supplier;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -8,7 +18,12 @@ import java.util.stream.StreamSupport;
 public class Permuter<T>
 {
     private final T[] items;
-    private final PartialResultValidator<T> partialResultValidator;
+    private final int[] groupSizes;
+    private final int length;
+    private final Supplier<? extends IncrementalValidator<T>> validatorFactory;
+    private final PermutationOrder order;
+    private final Symmetry symmetry;
+    private final PermutationMetrics metrics;
 
     @SafeVarargs
     public Permuter(T... items)
@@ -19,8 +34,9 @@ public class Permuter<T>
     @SafeVarargs
     public Permuter(PartialResultValidator<T> partialResultValidator, T... items)
     {
-        this.items = items;
-        this.partialResultValidator = partialResultValidator;
+        this(items, null, items.length, partialResultValidator == null ? null
+                : PrefixValidator.incremental(verdict(partialResultValidator)),
+                PermutationOrder.LEXICOGRAPHIC, Symmetry.NONE, null);
     }
 
     @SuppressWarnings("unchecked")
@@ -45,28 +61,460 @@ public class Permuter<T>
         this(partialResultValidator, items.stream());
     }
 
+    private Permuter(T[] items, int[] groupSizes, int length,
+            Supplier<? extends IncrementalValidator<T>> validatorFactory, PermutationOrder order,
+            Symmetry symmetry, PermutationMetrics metrics)
+    {
+        this.items = items;
+        this.groupSizes = groupSizes;
+        this.length = length;
+        this.validatorFactory = validatorFactory;
+        this.order = order;
+        this.symmetry = symmetry;
+        this.metrics = metrics;
+    }
+
+    private static <T> PrefixValidator<T> verdict(PartialResultValidator<T> validator)
+    {
+        return prefix -> {
+            try
+            {
+                validator.validate(prefix.stream());
+                return true;
+            }
+            catch (ValidationException ex)
+            {
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Produces a permuter which is the same as this one, except that it validates each prefix with
+     * validators from the specified factory (see {@link IncrementalValidator}), in place of any
+     * validator it already has.
+     */
+    public Permuter<T> withValidator(Supplier<? extends IncrementalValidator<T>> validatorFactory)
+    {
+        return new Permuter<>(items, groupSizes, length, validatorFactory, order, symmetry,
+                metrics);
+    }
+
+    /**
+     * Produces a permuter which is the same as this one, except that it produces its permutations
+     * in the specified order.
+     */
+    public Permuter<T> withOrder(PermutationOrder order)
+    {
+        return new Permuter<>(items, groupSizes, length, validatorFactory,
+                Objects.requireNonNull(order), symmetry, metrics);
+    }
+
+    /**
+     * Produces a permuter which is the same as this one, except that it produces only the
+     * canonical representative of each set of permutations that are equivalent under the
+     * specified symmetry. Symmetries other than {@link Symmetry#NONE} are only supported for
+     * permutations of all of a set of distinct items, in lexicographic order.
+     */
+    public Permuter<T> withSymmetry(Symmetry symmetry)
+    {
+        if (symmetry != Symmetry.NONE && (groupSizes != null || length != items.length))
+            throw new IllegalStateException("Symmetries are only supported for permutations "
+                    + "of all of a set of distinct items");
+        return new Permuter<>(items, groupSizes, length, validatorFactory, order,
+                Objects.requireNonNull(symmetry), metrics);
+    }
+
+    /**
+     * Produces a permuter which is the same as this one, except that it produces the arrangements
+     * of the specified number of the items (the k-permutations) rather than of all of them. The
+     * search stops at that depth, so the arrangements are produced without enumerating the
+     * permutations of the items left over.
+     */
+    public Permuter<T> withLength(int length)
+    {
+        if (groupSizes != null && length != items.length)
+            throw new IllegalStateException("Multisets can only be permuted in full");
+        if (symmetry != Symmetry.NONE && length != items.length)
+            throw new IllegalStateException("Symmetries are only supported for full permutations");
+        if (length < 0 || length > items.length)
+            throw new IllegalArgumentException(
+                    "Length " + length + " is out of range for " + items.length + " items");
+        return new Permuter<>(items, groupSizes, length, validatorFactory, order, symmetry,
+                metrics);
+    }
+
+    /**
+     * Produces a permuter which is the same as this one, except that it records the progress of
+     * each run in the specified metrics, or records nothing if they are null. Minimal-change order
+     * does not support metrics.
+     */
+    public Permuter<T> withMetrics(PermutationMetrics metrics)
+    {
+        return new Permuter<>(items, groupSizes, length, validatorFactory, order, symmetry,
+                metrics);
+    }
+
+    /**
+     * Produces a permuter for the same items which treats items that are equal, according to
+     * {@link Object#equals(Object)}, as interchangeable, so that it produces each distinct
+     * arrangement of the items exactly once.
+     *
+     * The items are reordered so that equal items are adjacent, with the groups in the order of
+     * their first occurrence; the indices supplied to validators and to consumers of index arrays
+     * refer to this order, which is given by {@link #getItems()}.
+     */
+    public Permuter<T> asMultiset()
+    {
+        return grouped(Objects::equals);
+    }
+
+    /**
+     * As {@link #asMultiset()}, but items are treated as equal if the specified comparator
+     * compares them as equal.
+     */
+    public Permuter<T> asMultiset(Comparator<? super T> comparator)
+    {
+        return grouped((a, b) -> comparator.compare(a, b) == 0);
+    }
+
+    private Permuter<T> grouped(BiPredicate<T, T> equal)
+    {
+        if (length != items.length)
+            throw new IllegalStateException("Multisets can only be permuted in full");
+        if (symmetry != Symmetry.NONE)
+            throw new IllegalStateException("Symmetries are not supported for multisets");
+        List<List<T>> groups = new ArrayList<>();
+        for (T item : items)
+        {
+            List<T> group = groups
+                    .stream()
+                    .filter(g -> equal.test(g.get(0), item))
+                    .findFirst()
+                    .orElse(null);
+            if (group == null)
+                groups.add(group = new ArrayList<>());
+            group.add(item);
+        }
+        T[] groupedItems = items.clone();
+        int index = 0;
+        for (List<T> group : groups)
+            for (T item : group)
+                groupedItems[index++] = item;
+        return new Permuter<>(groupedItems,
+                groups.size() == items.length ? null
+                        : groups.stream().mapToInt(List::size).toArray(),
+                length, validatorFactory, order, symmetry, metrics);
+    }
+
+    /**
+     * Gets the items, in the order to which the indices in index arrays refer.
+     */
+    public List<T> getItems()
+    {
+        return Collections.unmodifiableList(Arrays.asList(items));
+    }
+
+    private PermutationRanker ranker()
+    {
+        return groupSizes == null ? new PermutationRanker(items.length, length)
+                : new PermutationRanker(groupSizes);
+    }
+
+    private Supplier<IntIncrementalValidator> indexValidatorFactory()
+    {
+        Supplier<IntIncrementalValidator> symmetryValidatorFactory = symmetryValidatorFactory();
+        if (validatorFactory == null)
+            return symmetryValidatorFactory;
+        if (symmetryValidatorFactory == null)
+            return () -> indexValidator(validatorFactory.get());
+        return () -> bothValidators(symmetryValidatorFactory.get(),
+                indexValidator(validatorFactory.get()));
+    }
+
+    /**
+     * Gets a factory for the validators that prune the permutations which are not canonical under
+     * this permuter's symmetry, or null if there are none to prune. Those that do not start with
+     * the first item are excluded by the range of ranks instead (see {@link #rankLimit()}).
+     */
+    private Supplier<IntIncrementalValidator> symmetryValidatorFactory()
+    {
+        int referencePosition = symmetry == Symmetry.REVERSAL ? 0
+                : symmetry == Symmetry.DIHEDRAL ? 1 : -1;
+        if (referencePosition < 0 || referencePosition >= items.length - 1)
+            return null;
+        return () -> new ReflectionValidator(items.length, referencePosition);
+    }
+
+    private static IntIncrementalValidator bothValidators(IntIncrementalValidator first,
+            IntIncrementalValidator second)
+    {
+        return new IntIncrementalValidator()
+        {
+            @Override
+            public boolean push(int index)
+            {
+                // Both must be told, as the index is part of the prefix whatever they return
+                return first.push(index) & second.push(index);
+            }
+
+            @Override
+            public void pop()
+            {
+                first.pop();
+                second.pop();
+            }
+        };
+    }
+
+    private IntIncrementalValidator indexValidator(IncrementalValidator<T> validator)
+    {
+        return new IntIncrementalValidator()
+        {
+            @Override
+            public boolean push(int index)
+            {
+                return validator.push(index, items[index]);
+            }
+
+            @Override
+            public void pop()
+            {
+                validator.pop();
+            }
+        };
+    }
+
     public Stream<Stream<T>> permute()
     {
         return permute(null);
     }
 
+    /**
+     * Produces the arrangements of the specified number of the items; see
+     * {@link #withLength(int)}.
+     */
+    public Stream<Stream<T>> permute(int length)
+    {
+        return withLength(length).permute();
+    }
+
     public Stream<Stream<T>> permute(CheckpointManager checkpointManager)
     {
-        IntPartialResultValidator validator = partialResultValidator == null ? null
-                : str -> partialResultValidator.validate(objectsAtIndices(str));
-        int spliteratorCount = checkpointManager == null ? 1
-                : Math.max(1, checkpointManager.getInitStringCount());
-        PermuterSpliterator[] spliterators = IntStream
-                .range(0, spliteratorCount)
-                .mapToObj(i -> new PermuterSpliterator(items.length, validator, checkpointManager))
-                .toArray(PermuterSpliterator[]::new);
-        return Stream
-                .of(spliterators)
-                .parallel()
-                .flatMap(spl -> StreamSupport.stream(spl, true))
+        return StreamSupport
+                .stream(spliterators(checkpointManager), true)
+                .map(this::objectsAtIndices);
+    }
+
+    /**
+     * Produces one of {@code shardCount} disjoint slices of the permutations, whose union is the
+     * full set. Each slice is a contiguous range of ranks (as defined by {@link PermutationRanker})
+     * of as near equal size as possible, so that independent processes can each be given a
+     * different shard index without any coordination between them.
+     */
+    public Stream<Stream<T>> permute(int shardIndex, int shardCount)
+    {
+        return permute(shardIndex, shardCount, null);
+    }
+
+    public Stream<Stream<T>> permute(int shardIndex, int shardCount,
+            CheckpointManager checkpointManager)
+    {
+        return StreamSupport
+                .stream(spliterators(shardIndex, shardCount, checkpointManager), true)
                 .map(this::objectsAtIndices);
     }
 
+    /**
+     * Produces up to {@code count} of the permutations that {@link #permute()} produces, starting
+     * with the one at position {@code offset}, for paging through them. The permutations before
+     * the window are skipped on the spliterator (see {@link IntPermutationSpliterator#advanceBy})
+     * rather than passed through the stream; without a validator, this takes time proportional to
+     * the number of items rather than to {@code offset}. The stream is sequential, since the window
+     * is defined by the order in which the permutations are produced.
+     */
+    public Stream<Stream<T>> window(long offset, long count)
+    {
+        if (offset < 0 || count < 0)
+            throw new IllegalArgumentException("Invalid window of " + count + " at " + offset);
+        PermuterSpliteratorGroup spliterators = spliterators(null);
+        spliterators.advanceBy(offset);
+        return StreamSupport
+                .stream(spliterators, false)
+                .limit(count)
+                .map(this::objectsAtIndices);
+    }
+
+    /**
+     * Visits the permutations as arrays of indices, as described in {@link IntPermutationConsumer},
+     * without creating a stream or any objects per permutation. The permutations are produced in
+     * parallel, each spliterator reusing its own array, so the consumer must be thread-safe.
+     */
+    public void forEach(IntPermutationConsumer action)
+    {
+        forEach(null, action);
+    }
+
+    /**
+     * As {@link #forEach(IntPermutationConsumer)}, with checkpointing.
+     */
+    public void forEach(CheckpointManager checkpointManager, IntPermutationConsumer action)
+    {
+        spliterators(checkpointManager).visitRemainingInParallel(action);
+    }
+
+    /**
+     * As {@link #forEach(IntPermutationConsumer)}, for one shard of the permutations as described
+     * in {@link #permute(int, int)}, with checkpointing.
+     */
+    public void forEach(int shardIndex, int shardCount, CheckpointManager checkpointManager,
+            IntPermutationConsumer action)
+    {
+        spliterators(shardIndex, shardCount, checkpointManager).visitRemainingInParallel(action);
+    }
+
+    /**
+     * Visits the permutations in batches of up to {@code batchSize}, packed into a reusable array
+     * of indices as described in {@link IntPermutationBatchConsumer}, so that the cost of each call
+     * is spread over many permutations and the consumer can score a whole batch in one loop. The
+     * batches are produced in parallel, each in its own array, so the consumer must be thread-safe.
+     */
+    public void forEachBatch(int batchSize, IntPermutationBatchConsumer action)
+    {
+        forEachBatch(batchSize, null, action);
+    }
+
+    /**
+     * As {@link #forEachBatch(int, IntPermutationBatchConsumer)}, with checkpointing; checkpoints
+     * are published once per batch rather than once per permutation.
+     */
+    public void forEachBatch(int batchSize, CheckpointManager checkpointManager,
+            IntPermutationBatchConsumer action)
+    {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        spliterators(checkpointManager).visitRemainingInBatchesInParallel(batchSize, action);
+    }
+
+    /**
+     * Visits the permutations in minimal-change order, whatever order this permuter is set to use,
+     * reporting the positions swapped between each one and the previous. The permutations are
+     * divided into runs which are visited in parallel, and each run is given to a different
+     * consumer obtained from the specified factory, so that a consumer only ever sees a single
+     * sequence of swaps, on a single thread.
+     */
+    public void forEachWithSwaps(Supplier<? extends IntPermutationSwapConsumer> consumerFactory)
+    {
+        ParallelVisitTask.visit(minimalChangeSpliterator(),
+                MinimalChangePermuterSpliterator::trySplit,
+                spliterator -> spliterator.visitRemaining(consumerFactory.get()));
+    }
+
+    private MinimalChangePermuterSpliterator minimalChangeSpliterator()
+    {
+        if (validatorFactory != null || groupSizes != null || length != items.length
+                || symmetry != Symmetry.NONE || metrics != null)
+            throw new IllegalStateException("Minimal-change order does not support validation, "
+                    + "multisets, symmetries, metrics or arrangements of fewer than all the items");
+        return new MinimalChangePermuterSpliterator(items.length);
+    }
+
+    public Stream<T> permutationAt(long rank)
+    {
+        return objectsAtIndices(IntStream.of(ranker().unrank(rank)));
+    }
+
+    public Stream<T> permutationAt(BigInteger rank)
+    {
+        return objectsAtIndices(IntStream.of(ranker().unrank(rank)));
+    }
+
+    private PermuterSpliteratorGroup spliterators(CheckpointManager checkpointManager)
+    {
+        return spliterators(0, 1, checkpointManager);
+    }
+
+    /**
+     * Produces the spliterators for a shard. In lexicographic order, where there is neither a
+     * validator (including one that enforces a symmetry) nor a checkpoint manager, and the
+     * permutations are of all the items, a {@link LexicographicPermuterSpliterator} is used, since
+     * it does much less work per permutation and produces the same permutations in the same order.
+     * For arrangements of fewer than all the items, it would have to reverse the items not chosen
+     * at every step, so {@link IntArrayPermuterSpliterator} is used instead; every candidate that
+     * it queues at the last level is an arrangement, so its cost per arrangement does not grow with
+     * the number of items not chosen.
+     */
+    private PermuterSpliteratorGroup spliterators(int shardIndex, int shardCount,
+            CheckpointManager checkpointManager)
+    {
+        if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount)
+            throw new IllegalArgumentException(
+                    "Invalid shard " + shardIndex + " of " + shardCount);
+        if (order == PermutationOrder.MINIMAL_CHANGE)
+        {
+            if (checkpointManager != null || shardCount > 1)
+                throw new IllegalStateException(
+                        "Minimal-change order does not support checkpointing or sharding");
+            return new PermuterSpliteratorGroup(minimalChangeSpliterator());
+        }
+        PermutationRanker ranker = ranker();
+        BigInteger fromRank = shardBoundary(shardIndex, shardCount);
+        BigInteger toRank = shardBoundary(shardIndex + 1, shardCount);
+        Supplier<IntIncrementalValidator> indexValidatorFactory = indexValidatorFactory();
+        if (indexValidatorFactory == null && checkpointManager == null && groupSizes == null
+                && length == items.length)
+            return new PermuterSpliteratorGroup(
+                    new LexicographicPermuterSpliterator(ranker, fromRank, toRank, metrics));
+        List<String> initStrings = checkpointManager == null ? Collections.<String> emptyList()
+                : checkpointManager.takeInitStrings();
+        if (initStrings.isEmpty())
+            return new PermuterSpliteratorGroup(new IntArrayPermuterSpliterator(ranker, fromRank,
+                    toRank, indexValidatorFactory, checkpointManager, metrics));
+        return new PermuterSpliteratorGroup(CheckpointRebalancer
+                .rebalance(ranker, toRank, initStrings, ForkJoinPool.getCommonPoolParallelism())
+                .stream()
+                .map(unit -> restoredSpliterator(ranker, toRank, unit, indexValidatorFactory,
+                        checkpointManager))
+                .toArray(IntPermutationSpliterator[]::new));
+    }
+
+    /**
+     * Produces a spliterator for one of the units of work into which a run that is resuming from
+     * a checkpoint has been divided (see {@link CheckpointRebalancer}).
+     */
+    private IntPermutationSpliterator restoredSpliterator(PermutationRanker ranker,
+            BigInteger toRank, List<String> unit,
+            Supplier<IntIncrementalValidator> indexValidatorFactory,
+            CheckpointManager checkpointManager)
+    {
+        IntPermutationSpliterator[] members = unit
+                .stream()
+                .map(str -> IntArrayPermuterSpliterator.restore(ranker, str, toRank,
+                        indexValidatorFactory, checkpointManager, metrics))
+                .toArray(IntPermutationSpliterator[]::new);
+        return members.length == 1 ? members[0] : new PermuterSpliteratorGroup(members);
+    }
+
+    private BigInteger shardBoundary(int shardIndex, int shardCount)
+    {
+        return rankLimit()
+                .multiply(BigInteger.valueOf(shardIndex))
+                .divide(BigInteger.valueOf(shardCount));
+    }
+
+    /**
+     * Gets the rank after the last one to be produced. Under a symmetry which includes rotation,
+     * only the permutations which start with the first item are canonical, and those are the
+     * first (n - 1)! in lexicographic order.
+     */
+    private BigInteger rankLimit()
+    {
+        BigInteger count = ranker().bigCount();
+        if (items.length == 0 || symmetry != Symmetry.CYCLIC && symmetry != Symmetry.DIHEDRAL)
+            return count;
+        return count.divide(BigInteger.valueOf(items.length));
+    }
+
     private Stream<T> objectsAtIndices(IntStream indices)
     {
         return indices.mapToObj(i -> items[i]);
@@ -0,0 +1,151 @@
+package uk.org.thehickses.permute;
+
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Presents a number of spliterators, such as those restored from a set of checkpoints, as one. It
+ * splits by handing over half of its members until it has only one left, and then by splitting
+ * that member, so that a parallel stream can share out all the work rather than just whole members.
+ */
+class PermuterSpliteratorGroup implements IntPermutationSpliterator
+{
+    private final IntPermutationSpliterator[] members;
+    private int from;
+    private final int to;
+    private final int characteristics;
+
+    PermuterSpliteratorGroup(IntPermutationSpliterator... members)
+    {
+        this(members, 0, members.length);
+    }
+
+    private PermuterSpliteratorGroup(IntPermutationSpliterator[] members, int from, int to)
+    {
+        this.members = members;
+        this.from = from;
+        this.to = to;
+        this.characteristics = characteristics(members, from, to);
+    }
+
+    /**
+     * Works out the characteristics of the group when it is created, so that they do not change as
+     * its members are used up. The group is only sized if all its members are, and their sizes add
+     * up to less than the largest that can be reported; the members only ever gain the SIZED
+     * characteristic when they are split, so the answer remains true.
+     */
+    private static int characteristics(IntPermutationSpliterator[] members, int from, int to)
+    {
+        int sized = SIZED | SUBSIZED;
+        long size = 0;
+        for (int i = from; i < to && sized != 0; i++)
+        {
+            sized &= members[i].characteristics();
+            size = PermutationRanker.saturatedAdd(size, members[i].estimateSize());
+        }
+        return DISTINCT | IMMUTABLE | NONNULL | (size == Long.MAX_VALUE ? 0 : sized);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super IntStream> action)
+    {
+        for (; from < to; from++)
+            if (members[from].tryAdvance(action))
+                return true;
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super IntStream> action)
+    {
+        for (; from < to; from++)
+            members[from].forEachRemaining(action);
+    }
+
+    @Override
+    public boolean tryVisit(IntPermutationConsumer action)
+    {
+        for (; from < to; from++)
+            if (members[from].tryVisit(action))
+                return true;
+        return false;
+    }
+
+    @Override
+    public void visitRemaining(IntPermutationConsumer action)
+    {
+        for (; from < to; from++)
+            members[from].visitRemaining(action);
+    }
+
+    @Override
+    public void visitRemainingInBatches(int batchSize, IntPermutationBatchConsumer action)
+    {
+        for (; from < to; from++)
+            members[from].visitRemainingInBatches(batchSize, action);
+    }
+
+    @Override
+    public long advanceBy(long count)
+    {
+        if (count < 0)
+            throw new IllegalArgumentException("Cannot advance by " + count);
+        long skipped = 0;
+        for (; from < to; from++)
+        {
+            skipped += members[from].advanceBy(count - skipped);
+            if (skipped == count)
+                break;
+        }
+        return skipped;
+    }
+
+    public void visitRemainingInParallel(IntPermutationConsumer action)
+    {
+        ParallelVisitTask.visit(this, PermuterSpliteratorGroup::trySplit,
+                group -> group.visitRemaining(action));
+    }
+
+    public void visitRemainingInBatchesInParallel(int batchSize,
+            IntPermutationBatchConsumer action)
+    {
+        ParallelVisitTask.visit(this, PermuterSpliteratorGroup::trySplit,
+                group -> group.visitRemainingInBatches(batchSize, action));
+    }
+
+    @Override
+    public PermuterSpliteratorGroup trySplit()
+    {
+        if (to - from > 1)
+        {
+            int mid = (from + to) >>> 1;
+            PermuterSpliteratorGroup answer = new PermuterSpliteratorGroup(members, from, mid);
+            from = mid;
+            return answer;
+        }
+        if (to - from < 1)
+            return null;
+        IntPermutationSpliterator split = members[from].trySplit();
+        return split == null ? null : new PermuterSpliteratorGroup(split);
+    }
+
+    @Override
+    public long estimateSize()
+    {
+        long answer = 0;
+        for (int i = from; i < to; i++)
+        {
+            long size = members[i].estimateSize();
+            if (Long.MAX_VALUE - answer < size)
+                return Long.MAX_VALUE;
+            answer += size;
+        }
+        return answer;
+    }
+
+    @Override
+    public int characteristics()
+    {
+        return characteristics;
+    }
+}
@@ -0,0 +1,46 @@
+package uk.org.thehickses.permute;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * A validator which returns its verdict on a prefix, rather than signalling rejection by throwing
+ * a {@link ValidationException}.
+ */
+@FunctionalInterface
+public interface PrefixValidator<T>
+{
+    /**
+     * Returns whether the specified prefix is valid. The list is an unmodifiable view which
+     * changes as the prefix changes, so must not be retained.
+     */
+    boolean isValid(List<T> prefix);
+
+    /**
+     * Produces a factory of incremental validators which maintain the prefix and pass it to the
+     * specified validator, for use with {@link Permuter#withValidator(Supplier)}.
+     */
+    static <T> Supplier<IncrementalValidator<T>> incremental(PrefixValidator<T> validator)
+    {
+        return () -> new IncrementalValidator<T>()
+        {
+            private final List<T> prefix = new ArrayList<>();
+            private final List<T> view = Collections.unmodifiableList(prefix);
+
+            @Override
+            public boolean push(int index, T item)
+            {
+                prefix.add(item);
+                return validator.isValid(view);
+            }
+
+            @Override
+            public void pop()
+            {
+                prefix.remove(prefix.size() - 1);
+            }
+        };
+    }
+}
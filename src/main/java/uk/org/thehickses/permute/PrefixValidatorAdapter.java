@@ -0,0 +1,63 @@
+package uk.org.thehickses.permute;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Allows an {@link IntPrefixValidator} to be used where an {@link IntIncrementalValidator} is
+ * required, by keeping a copy of the prefix and validating the whole of it on each push.
+ */
+class PrefixValidatorAdapter implements IntIncrementalValidator
+{
+    private final IntPrefixValidator validator;
+    private int[] prefix = new int[16];
+    private int length;
+
+    static Supplier<IntIncrementalValidator> factory(IntPrefixValidator validator)
+    {
+        return validator == null ? null : () -> new PrefixValidatorAdapter(validator);
+    }
+
+    static Supplier<IntIncrementalValidator> factory(IntPartialResultValidator validator)
+    {
+        return validator == null ? null : factory(verdict(validator));
+    }
+
+    /**
+     * Converts an exception-based validator into one that returns its verdict.
+     */
+    static IntPrefixValidator verdict(IntPartialResultValidator validator)
+    {
+        return (prefix, length) -> {
+            try
+            {
+                validator.validate(Arrays.stream(prefix, 0, length));
+                return true;
+            }
+            catch (ValidationException ex)
+            {
+                return false;
+            }
+        };
+    }
+
+    PrefixValidatorAdapter(IntPrefixValidator validator)
+    {
+        this.validator = validator;
+    }
+
+    @Override
+    public boolean push(int index)
+    {
+        if (length == prefix.length)
+            prefix = Arrays.copyOf(prefix, length * 2);
+        prefix[length++] = index;
+        return validator.isValid(prefix, length);
+    }
+
+    @Override
+    public void pop()
+    {
+        length--;
+    }
+}
@@ -0,0 +1,58 @@
+package uk.org.thehickses.permute;
+
+/**
+ * A validator which accepts only those permutations of all the items in which the index at a
+ * reference position is lower than the index at the last position, so that of each pair of
+ * permutations which are mirror images of each other (apart from the items before the reference
+ * position) only one is accepted.
+ *
+ * A prefix is rejected as soon as no index higher than the one at the reference position is left
+ * to go in the last position, which it tracks by counting the higher indices already used. The
+ * reference position must be before the last position.
+ */
+class ReflectionValidator implements IntIncrementalValidator
+{
+    private final int itemCount;
+    private final int referencePosition;
+    private final int[] prefix;
+    private int depth = 0;
+    private int reference;
+    private int higherUsed;
+
+    public ReflectionValidator(int itemCount, int referencePosition)
+    {
+        this.itemCount = itemCount;
+        this.referencePosition = referencePosition;
+        this.prefix = new int[itemCount];
+    }
+
+    @Override
+    public boolean push(int index)
+    {
+        int position = depth++;
+        prefix[position] = index;
+        if (position < referencePosition)
+            return true;
+        if (position == referencePosition)
+        {
+            reference = index;
+            higherUsed = 0;
+            for (int i = 0; i < position; i++)
+                if (prefix[i] > reference)
+                    higherUsed++;
+        }
+        else if (index > reference)
+            higherUsed++;
+        if (position == itemCount - 1)
+            return index > reference;
+        return higherUsed < itemCount - 1 - reference;
+    }
+
+    @Override
+    public void pop()
+    {
+        int position = --depth;
+        if (position > referencePosition && prefix[position] > reference)
+            higherUsed--;
+    }
+}
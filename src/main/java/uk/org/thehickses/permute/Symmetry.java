@@ -0,0 +1,40 @@
+package uk.org.thehickses.permute;
+
+/**
+ * The symmetries under which a {@link Permuter} can treat permutations as equivalent, producing
+ * only one canonical representative of each set of equivalent permutations. This suits problems
+ * such as seating plans and tours, where the permutations describe a cycle rather than a line.
+ *
+ * The canonical representatives are defined in terms of the indices of the items, and the
+ * permutations that are not canonical are pruned during the search rather than being produced and
+ * discarded.
+ */
+public enum Symmetry
+{
+    /**
+     * No symmetry; every permutation is produced. This is the default.
+     */
+    NONE,
+
+    /**
+     * Permutations which are rotations of one another are equivalent. The canonical representative
+     * is the one which starts with the first item, so for n items (n - 1)! permutations are
+     * produced.
+     */
+    CYCLIC,
+
+    /**
+     * Permutations which are the reverse of one another are equivalent. The canonical
+     * representative is the one whose first item has a lower index than its last, so for n items
+     * (where n is at least 2) n! / 2 permutations are produced.
+     */
+    REVERSAL,
+
+    /**
+     * Permutations which are rotations or reflections of one another are equivalent. The canonical
+     * representative is the one which starts with the first item, and whose second item has a lower
+     * index than its last, so for n items (where n is at least 3) (n - 1)! / 2 permutations are
+     * produced.
+     */
+    DIHEDRAL
+}
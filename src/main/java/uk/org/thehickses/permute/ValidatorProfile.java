@@ -0,0 +1,74 @@
+package uk.org.thehickses.permute;
+
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The number of times the validator was called, the number of prefixes it rejected and the time
+ * it took, for each length of prefix, during a run profiled by {@link PermutationMetrics}. The
+ * lengths at which the validator rejects most prefixes for the least time are where its most
+ * expensive checks belong.
+ */
+public class ValidatorProfile
+{
+    private final long[] validations;
+    private final long[] rejections;
+    private final long[] nanos;
+
+    ValidatorProfile(long[] validations, long[] rejections, long[] nanos)
+    {
+        this.validations = validations.clone();
+        this.rejections = rejections.clone();
+        this.nanos = nanos.clone();
+    }
+
+    /**
+     * Gets the greatest length of prefix for which there are figures.
+     */
+    public int getMaxPrefixLength()
+    {
+        return validations.length;
+    }
+
+    public long getValidations(int prefixLength)
+    {
+        return validations[prefixLength - 1];
+    }
+
+    public long getRejections(int prefixLength)
+    {
+        return rejections[prefixLength - 1];
+    }
+
+    public long getNanos(int prefixLength)
+    {
+        return nanos[prefixLength - 1];
+    }
+
+    /**
+     * Gets the proportion of the prefixes of the specified length that the validator rejected, or
+     * zero if it was never called for that length.
+     */
+    public double getRejectRatio(int prefixLength)
+    {
+        long count = getValidations(prefixLength);
+        return count == 0 ? 0 : (double) getRejections(prefixLength) / count;
+    }
+
+    /**
+     * Produces a table of the figures, with one row for each length of prefix.
+     */
+    @Override
+    public String toString()
+    {
+        return String.format("%6s %14s %14s %8s %12s %10s%n", "length", "validations",
+                "rejections", "reject%", "total ms", "ns/call")
+                + IntStream
+                        .rangeClosed(1, getMaxPrefixLength())
+                        .mapToObj(l -> String.format("%6d %14d %14d %8.2f %12.3f %10.1f", l,
+                                getValidations(l), getRejections(l), getRejectRatio(l) * 100,
+                                getNanos(l) / 1e6, getValidations(l) == 0 ? 0.0
+                                        : (double) getNanos(l) / getValidations(l)))
+                        .collect(Collectors.joining(String.format("%n")));
+    }
+}
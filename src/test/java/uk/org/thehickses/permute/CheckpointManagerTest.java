@@ -1,10 +1,12 @@
 package uk.org.thehickses.permute;
 
+import static org.assertj.core.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 import java.util.Optional;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -49,6 +51,65 @@ public class CheckpointManagerTest
                 prefixes().toArray(String[]::new)), prefixes());
     }
 
+    @Test
+    void testFinalOutputWhenAllDeregistered() throws Exception
+    {
+        CheckpointOutputHandler handler = mock(CheckpointOutputHandler.class);
+        CheckpointManager mgr = new CheckpointManager(CHECKPOINT_INTERVAL, handler);
+        Checkpointer first = mgr.register();
+        Checkpointer second = mgr.register();
+        first.checkpoint("a");
+        second.checkpoint("b");
+        first.deregister();
+        first.deregister();
+        verifyZeroInteractions(handler);
+        second.deregister();
+        verify(handler).handleOutput("");
+        sleep(TimeUnit.SECONDS.toMillis(CHECKPOINT_INTERVAL) * 3 / 2);
+        verifyNoMoreInteractions(handler);
+    }
+
+    @Test
+    void testClose() throws Exception
+    {
+        CheckpointOutputHandler handler = mock(CheckpointOutputHandler.class);
+        try (CheckpointManager mgr = new CheckpointManager(CHECKPOINT_INTERVAL, handler))
+        {
+            mgr.register().checkpoint("a");
+        }
+        verify(handler).handleOutput("a");
+        sleep(TimeUnit.SECONDS.toMillis(CHECKPOINT_INTERVAL) * 3 / 2);
+        verifyNoMoreInteractions(handler);
+    }
+
+    @Test
+    void testSuppliedScheduler() throws Exception
+    {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        scheduler.setRemoveOnCancelPolicy(true);
+        try
+        {
+            CheckpointOutputHandler handler = mock(CheckpointOutputHandler.class);
+            CheckpointManager[] mgrs = IntStream
+                    .range(0, 100)
+                    .mapToObj(i -> new CheckpointManager(CHECKPOINT_INTERVAL, handler, scheduler))
+                    .toArray(CheckpointManager[]::new);
+            Stream.of(mgrs).forEach(mgr -> mgr.register().checkpoint("a"));
+            assertThat(scheduler.getQueue()).hasSize(200);
+            sleep(TimeUnit.SECONDS.toMillis(CHECKPOINT_INTERVAL) * 3 / 2);
+            verify(handler, times(100)).handleOutput("a");
+            Stream.of(mgrs).forEach(CheckpointManager::close);
+            assertThat(scheduler.getQueue()).isEmpty();
+            assertThat(scheduler.isShutdown()).isFalse();
+        }
+        finally
+        {
+            scheduler.shutdown();
+        }
+        assertThat(CheckpointManager.sharedScheduler())
+                .isSameAs(CheckpointManager.sharedScheduler());
+    }
+
     private Stream<String> prefixes()
     {
         return IntStream
@@ -0,0 +1,150 @@
+package uk.org.thehickses.permute;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class CheckpointRebalancerTest
+{
+    @Test
+    void testToRankCheckpointString()
+    {
+        PermutationRanker ranker = new PermutationRanker(5);
+        BigInteger end = ranker.bigCount();
+        assertThat(IntArrayPermuterSpliterator.toRankCheckpointString(ranker,
+                "0/1,2,3,4/2,3,4/3,4/4", end)).isEqualTo("0-24");
+        assertThat(IntArrayPermuterSpliterator.toRankCheckpointString(ranker, "1,2/3,4", end))
+                .isEqualTo("36-72");
+        assertThat(IntArrayPermuterSpliterator.toRankCheckpointString(ranker, "1,3/3,4", end))
+                .isNull();
+        assertThat(IntArrayPermuterSpliterator.toRankCheckpointString(ranker, "4/3/2/1,0/0", end))
+                .isNull();
+        assertThat(IntArrayPermuterSpliterator.toRankCheckpointString(ranker, "100-120", end))
+                .isEqualTo("100-120");
+        assertThat(IntArrayPermuterSpliterator.toRankCheckpointString(ranker, "", end)).isEmpty();
+    }
+
+    @Test
+    void testJoin()
+    {
+        assertThat(CheckpointRebalancer.join(ranges(0, 10, 10, 20, 25, 30, 30, 31, 35, 35, 40, 50)))
+                .usingElementComparator(CheckpointRebalancerTest::compare)
+                .containsExactlyElementsOf(ranges(0, 20, 25, 31, 40, 50));
+    }
+
+    @Test
+    void testJoinOverlapping()
+    {
+        assertThat(CheckpointRebalancer.join(ranges(0, 10, 5, 15, 20, 40, 25, 30, 30, 45, 50, 60)))
+                .usingElementComparator(CheckpointRebalancerTest::compare)
+                .containsExactlyElementsOf(ranges(0, 15, 20, 45, 50, 60));
+    }
+
+    @Test
+    void testRebalanceOverlapping()
+    {
+        PermutationRanker ranker = new PermutationRanker(4);
+        assertThat(CheckpointRebalancer.rebalance(ranker, ranker.bigCount(),
+                Arrays.asList("0,1,2,3/1,2,3/2,3/3", "2,3/0,1,3/1,3/3"), 2))
+                        .containsExactly(Arrays.asList("0-12"), Arrays.asList("12-24"));
+    }
+
+    @Test
+    void testDivide()
+    {
+        List<List<BigInteger[]>> units = CheckpointRebalancer
+                .divide(ranges(0, 10, 20, 21, 30, 100), 4);
+        assertThat(units).hasSize(4);
+        assertUnit(units.get(0), 0, 10, 20, 21, 30, 40);
+        assertUnit(units.get(1), 40, 61);
+        assertUnit(units.get(2), 61, 82);
+        assertUnit(units.get(3), 82, 100);
+        assertThat(CheckpointRebalancer.divide(ranges(0, 3), 8)).hasSize(3);
+        assertThat(CheckpointRebalancer.divide(ranges(), 8)).isEmpty();
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> CheckpointRebalancer.divide(ranges(0, 3), 0));
+    }
+
+    @Test
+    void testRebalance()
+    {
+        PermutationRanker ranker = new PermutationRanker(5);
+        assertThat(CheckpointRebalancer.rebalance(ranker, ranker.bigCount(),
+                Arrays.asList("100-120", "", "0/1,2,3,4/2,3,4/3,4/4", "24-30", "4/3/2/1,0/0"), 3))
+                        .containsExactly(Arrays.asList("0-17"), Arrays.asList("17-30", "100-104"),
+                                Arrays.asList("104-120"), Arrays.asList("4/3/2/1,0/0"));
+        assertThat(CheckpointRebalancer.rebalance(ranker, ranker.bigCount(),
+                Arrays.asList("", "5-5"), 3)).isEmpty();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 1, 2, 3, 8, 1000 })
+    void testCoverageIsUnchanged(int unitCount)
+    {
+        PermutationRanker ranker = new PermutationRanker(6);
+        List<String> checkpointStrings = new ArrayList<>(
+                Arrays.asList("0/1,2,3,4,5/2,3,4,5/3,4,5/5/4", "", "2,3/0,1,3,4,5/1,3,4,5",
+                        "480-481", "481-500", "2,3/0,1,4/1,4,5", "5/4/3/2/1,0/0"));
+        IntStream
+                .range(50, 70)
+                .mapToObj(i -> (i * 10) + "-" + (i * 10 + i % 4))
+                .forEach(checkpointStrings::add);
+        List<List<Integer>> expected = checkpointStrings
+                .stream()
+                .flatMap(str -> permutations(new IntArrayPermuterSpliterator(ranker,
+                        BigInteger.ZERO, ranker.bigCount(), null, new CheckpointManager(str))))
+                .collect(Collectors.toList());
+        List<List<String>> units = CheckpointRebalancer.rebalance(ranker, ranker.bigCount(),
+                checkpointStrings, unitCount);
+        assertThat(units.size()).isLessThanOrEqualTo(unitCount + 2);
+        assertThat(units).endsWith(Collections.singletonList("2,3/0,1,4/1,4,5"),
+                Collections.singletonList("5/4/3/2/1,0/0"));
+        List<List<Integer>> actual = units
+                .stream()
+                .flatMap(List::stream)
+                .flatMap(str -> permutations(IntArrayPermuterSpliterator.restore(ranker, str,
+                        ranker.bigCount(), null, null, null)))
+                .collect(Collectors.toList());
+        assertThat(actual).containsExactlyInAnyOrderElementsOf(expected);
+    }
+
+    private static Stream<List<Integer>> permutations(IntPermutationSpliterator spliterator)
+    {
+        List<List<Integer>> answer = new ArrayList<>();
+        spliterator.visitRemaining(
+                p -> answer.add(Arrays.stream(p).boxed().collect(Collectors.toList())));
+        return answer.stream();
+    }
+
+    private static void assertUnit(List<BigInteger[]> unit, long... bounds)
+    {
+        assertThat(unit)
+                .usingElementComparator(CheckpointRebalancerTest::compare)
+                .containsExactlyElementsOf(ranges(bounds));
+    }
+
+    private static int compare(BigInteger[] a, BigInteger[] b)
+    {
+        return Arrays.equals(a, b) ? 0 : 1;
+    }
+
+    private static List<BigInteger[]> ranges(long... bounds)
+    {
+        return IntStream
+                .range(0, bounds.length / 2)
+                .mapToObj(i -> new BigInteger[] { BigInteger.valueOf(bounds[2 * i]),
+                        BigInteger.valueOf(bounds[2 * i + 1]) })
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,88 @@
+package uk.org.thehickses.permute;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileCheckpointStoreTest
+{
+    @TempDir
+    Path dir;
+
+    private String contents(String fileName) throws Exception
+    {
+        return new String(Files.readAllBytes(dir.resolve(fileName)), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testWriteAndRead() throws Exception
+    {
+        FileCheckpointStore store = new FileCheckpointStore(dir.resolve("cp"));
+        assertThat(store.read()).isNull();
+        store.write("0,1/2\n3/4");
+        assertThat(store.read()).containsExactly("0,1/2", "3/4");
+        store.handleOutput("");
+        assertThat(store.read()).containsExactly("");
+        try (Stream<Path> files = Files.list(dir))
+        {
+            assertThat(files.map(f -> f.getFileName().toString())).containsExactly("cp");
+        }
+    }
+
+    @Test
+    void testGenerations() throws Exception
+    {
+        FileCheckpointStore store = new FileCheckpointStore(dir.resolve("cp"), 3);
+        for (int i = 1; i <= 4; i++)
+            store.write("" + i);
+        assertThat(contents("cp")).isEqualTo("4");
+        assertThat(contents("cp.1")).isEqualTo("3");
+        assertThat(contents("cp.2")).isEqualTo("2");
+        try (Stream<Path> files = Files.list(dir))
+        {
+            assertThat(files.map(f -> f.getFileName().toString()))
+                    .containsExactlyInAnyOrder("cp", "cp.1", "cp.2");
+        }
+        Files.delete(dir.resolve("cp"));
+        assertThat(store.read()).containsExactly("3");
+        assertThrows(IllegalArgumentException.class,
+                () -> new FileCheckpointStore(dir.resolve("cp"), 0));
+    }
+
+    @Test
+    void testResumeFrom() throws Exception
+    {
+        Path file = dir.resolve("cp");
+        CheckpointManager fresh = CheckpointManager.resumeFrom(file, 3600);
+        assertThat(fresh.getInitStringCount()).isEqualTo(0);
+        new FileCheckpointStore(file).write("100-120\n0/1,2,3,4/2,3,4/3,4/4");
+        Permuter<String> permuter = new Permuter<>("a", "b", "c", "d", "e");
+        CheckpointManager resumed = CheckpointManager.resumeFrom(file, 3600);
+        assertThat(resumed.getInitStringCount()).isEqualTo(2);
+        assertThat(permuter.permute(resumed).count()).isEqualTo(44);
+        new FileCheckpointStore(file).write("");
+        assertThat(permuter.permute(CheckpointManager.resumeFrom(file, 3600)).count())
+                .isEqualTo(0);
+    }
+
+    @Test
+    void testCheckpointsWrittenByManager() throws Exception
+    {
+        Path file = dir.resolve("cp");
+        CheckpointManager mgr = CheckpointManager.resumeFrom(file, 1);
+        mgr.register().checkpoint("0/1,2/2");
+        Thread.sleep(1500);
+        assertThat(new FileCheckpointStore(file).read()).containsExactly("0/1,2/2");
+        try (Stream<Path> files = Files.list(dir))
+        {
+            assertThat(files.map(f -> f.getFileName().toString())).containsExactly("cp");
+        }
+    }
+}
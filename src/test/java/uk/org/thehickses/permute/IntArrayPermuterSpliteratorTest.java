@@ -0,0 +1,802 @@
+package uk.org.thehickses.permute;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.InOrder;
+
+class IntArrayPermuterSpliteratorTest
+{
+    private static String[] results(Stream<IntStream> str)
+    {
+        return str
+                .map(res -> res.mapToObj(Integer::toString).collect(Collectors.joining()))
+                .toArray(String[]::new);
+    }
+
+    private static String[] legacyResults(int maxIndex, IntPartialResultValidator validator)
+    {
+        return results(
+                StreamSupport.stream(new PermuterSpliterator(maxIndex, validator), false));
+    }
+
+    private static String[] results(int maxIndex, IntPartialResultValidator validator)
+    {
+        return results(StreamSupport
+                .stream(new IntArrayPermuterSpliterator(maxIndex, validator), false));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 0, 1, 2, 3, 4, 5, 6 })
+    void testSameResultsAsPermuterSpliterator(int maxIndex)
+    {
+        assertThat(results(maxIndex, null)).containsExactly(legacyResults(maxIndex, null));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 0, 1, 2, 3, 4, 5, 6 })
+    void testSameResultsAsPermuterSpliteratorWithValidator(int maxIndex)
+    {
+        IntPartialResultValidator rejectIfAnyIndexOneMoreThanThePrevious = str -> {
+            int[] values = str.toArray();
+            for (int i = 1; i < values.length; i++)
+                if (values[i] - values[i - 1] == 1)
+                    throw new ValidationException();
+        };
+        assertThat(results(maxIndex, rejectIfAnyIndexOneMoreThanThePrevious))
+                .containsExactly(legacyResults(maxIndex, rejectIfAnyIndexOneMoreThanThePrevious));
+    }
+
+    private static Supplier<IntIncrementalValidator> rejectIfAnyIndexOneMoreThanThePrevious()
+    {
+        return () -> new IntIncrementalValidator()
+        {
+            private final Deque<Integer> prefix = new ArrayDeque<>();
+
+            @Override
+            public boolean push(int index)
+            {
+                boolean valid = prefix.isEmpty() || index - prefix.peek() != 1;
+                prefix.push(index);
+                return valid;
+            }
+
+            @Override
+            public void pop()
+            {
+                prefix.pop();
+            }
+        };
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 0, 1, 2, 3, 4, 5, 6 })
+    void testIncrementalValidator(int maxIndex)
+    {
+        IntPartialResultValidator rejectIfAnyIndexOneMoreThanThePrevious = str -> {
+            int[] values = str.toArray();
+            for (int i = 1; i < values.length; i++)
+                if (values[i] - values[i - 1] == 1)
+                    throw new ValidationException();
+        };
+        assertThat(results(StreamSupport
+                .stream(IntArrayPermuterSpliterator.withValidator(maxIndex,
+                        rejectIfAnyIndexOneMoreThanThePrevious(), null), false)))
+                                .containsExactly(legacyResults(maxIndex,
+                                        rejectIfAnyIndexOneMoreThanThePrevious));
+        assertThat(results(StreamSupport
+                .stream(IntArrayPermuterSpliterator.withValidator(maxIndex,
+                        rejectIfAnyIndexOneMoreThanThePrevious(), null), true)))
+                                .containsExactlyInAnyOrder(legacyResults(maxIndex,
+                                        rejectIfAnyIndexOneMoreThanThePrevious));
+    }
+
+    @Test
+    void testIncrementalValidatorWhenResuming()
+    {
+        String initString = "1,2,3,4/0,2,3,4/4,3,2/2,3/3";
+        IntPartialResultValidator rejectIfAnyIndexOneMoreThanThePrevious = str -> {
+            int[] values = str.toArray();
+            for (int i = 1; i < values.length; i++)
+                if (values[i] - values[i - 1] == 1)
+                    throw new ValidationException();
+        };
+        String[] expected = results(StreamSupport
+                .stream(new PermuterSpliterator(5, rejectIfAnyIndexOneMoreThanThePrevious,
+                        new CheckpointManager(initString)), false));
+        assertThat(expected).isNotEmpty();
+        assertThat(results(StreamSupport
+                .stream(IntArrayPermuterSpliterator.withValidator(5,
+                        rejectIfAnyIndexOneMoreThanThePrevious(),
+                        new CheckpointManager(initString)), false))).containsExactly(expected);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 0, 1, 2, 3, 4, 5, 6 })
+    void testPrefixValidator(int maxIndex)
+    {
+        IntPartialResultValidator rejectIfAnyIndexOneMoreThanThePrevious = str -> {
+            int[] values = str.toArray();
+            for (int i = 1; i < values.length; i++)
+                if (values[i] - values[i - 1] == 1)
+                    throw new ValidationException();
+        };
+        IntPrefixValidator lastIndexNotOneMoreThanThePrevious = (prefix,
+                length) -> length < 2 || prefix[length - 1] - prefix[length - 2] != 1;
+        assertThat(results(StreamSupport
+                .stream(IntArrayPermuterSpliterator.withPrefixValidator(maxIndex,
+                        lastIndexNotOneMoreThanThePrevious, null), true)))
+                                .containsExactlyInAnyOrder(legacyResults(maxIndex,
+                                        rejectIfAnyIndexOneMoreThanThePrevious));
+    }
+
+    @Test
+    void testParallel()
+    {
+        String[] actual = results(StreamSupport.stream(new IntArrayPermuterSpliterator(6), true));
+        assertThat(actual).containsExactlyInAnyOrder(legacyResults(6, null));
+    }
+
+    @Test
+    void testWithPermutationConsumer()
+    {
+        IntArrayPermuterSpliterator spl = new IntArrayPermuterSpliterator(5);
+        Stream.Builder<String> actual = Stream.builder();
+        AtomicReference<int[]> array = new AtomicReference<>();
+        spl.visitRemaining(perm -> {
+            assertThat(array.compareAndSet(null, perm) || array.get() == perm).isTrue();
+            actual
+                    .add(IntStream
+                            .of(perm)
+                            .mapToObj(Integer::toString)
+                            .collect(Collectors.joining()));
+        });
+        assertThat(actual.build().toArray(String[]::new)).containsExactly(legacyResults(5, null));
+    }
+
+    private static List<String> batches(IntPermutationSpliterator spl, int batchSize, int length,
+            List<Integer> counts)
+    {
+        List<String> answer = new ArrayList<>();
+        spl.visitRemainingInBatches(batchSize, (perms, count) -> {
+            counts.add(count);
+            for (int i = 0; i < count; i++)
+                answer.add(IntStream
+                        .range(i * length, (i + 1) * length)
+                        .mapToObj(j -> Integer.toString(perms[j]))
+                        .collect(Collectors.joining()));
+        });
+        return answer;
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 1, 7, 120, 1000 })
+    void testVisitRemainingInBatches(int batchSize)
+    {
+        List<Integer> counts = new ArrayList<>();
+        assertThat(batches(new IntArrayPermuterSpliterator(5), batchSize, 5, counts))
+                .containsExactly(results(5, null));
+        assertThat(counts.subList(0, counts.size() - 1)).allMatch(c -> c == batchSize);
+        assertThat(counts.stream().mapToInt(Integer::intValue).sum()).isEqualTo(120);
+        IntArrayPermuterSpliterator validated = IntArrayPermuterSpliterator.withValidator(5,
+                rejectIfAnyIndexOneMoreThanThePrevious(), null);
+        assertThat(batches(validated, batchSize, 5, new ArrayList<>()))
+                .containsExactly(results(StreamSupport.stream(
+                        IntArrayPermuterSpliterator.withValidator(5,
+                                rejectIfAnyIndexOneMoreThanThePrevious(), null),
+                        false)));
+    }
+
+    @Test
+    void testVisitRemainingInBatchesWithCheckpointing()
+    {
+        CheckpointManager mgr = spy(new CheckpointManager());
+        List<Integer> counts = new ArrayList<>();
+        assertThat(batches(new IntArrayPermuterSpliterator(4, mgr), 5, 4, counts))
+                .containsExactly(results(4, null));
+        assertThat(counts).containsExactly(5, 5, 5, 5, 4);
+        verify(mgr).checkpoint(0, "0,1,2,3/1,2,3/2,3/3");
+        verify(mgr).checkpoint(0, "0,1,2,3/3/2/1");
+        verify(mgr).checkpoint(0, "");
+        verify(mgr, times(6)).checkpoint(anyInt(), anyString());
+        verify(mgr).deregister(0);
+        assertThrows(IllegalArgumentException.class,
+                () -> new IntArrayPermuterSpliterator(4).visitRemainingInBatches(0, (p, c) -> {
+                }));
+    }
+
+    @Test
+    void testSplitsAreBalanced()
+    {
+        IntArrayPermuterSpliterator spl = new IntArrayPermuterSpliterator(8);
+        IntArrayPermuterSpliterator split = spl.trySplit();
+        assertThat(split.estimateSize()).isEqualTo(20160);
+        assertThat(spl.estimateSize()).isEqualTo(20160);
+        assertThat(split.toCheckpointString()).startsWith("4,5,6,7/");
+        for (int i = 0; i < 5041; i++)
+            spl.tryAdvance(str -> {
+            });
+        split = spl.trySplit();
+        assertThat(split.toCheckpointString()).startsWith("3/");
+        assertThat(split.estimateSize()).isEqualTo(5040);
+        assertThat(spl.estimateSize()).isEqualTo(10079);
+        split = spl.trySplit();
+        assertThat(split.toCheckpointString()).startsWith("2/");
+        assertThat(split.estimateSize()).isEqualTo(5040);
+        assertThat(spl.estimateSize()).isEqualTo(5039);
+        split = spl.trySplit();
+        assertThat(split.toCheckpointString()).startsWith("1/5,6,7/");
+        assertThat(split.estimateSize()).isEqualTo(2160);
+        assertThat(spl.estimateSize()).isEqualTo(2879);
+    }
+
+    @Test
+    void testSplitsAllTheWayDown()
+    {
+        IntArrayPermuterSpliterator spl = new IntArrayPermuterSpliterator(4);
+        Deque<IntArrayPermuterSpliterator> spls = new ArrayDeque<>(Arrays.asList(spl));
+        List<IntArrayPermuterSpliterator> leaves = new ArrayList<>();
+        while (!spls.isEmpty())
+        {
+            IntArrayPermuterSpliterator next = spls.pop();
+            IntArrayPermuterSpliterator split = next.trySplit();
+            if (split == null)
+                leaves.add(next);
+            else
+                spls.addAll(Arrays.asList(next, split));
+        }
+        assertThat(leaves).hasSize(24).allMatch(s -> s.estimateSize() == 1);
+        assertThat(results(leaves.stream().flatMap(s -> StreamSupport.stream(s, false))))
+                .containsExactlyInAnyOrder(legacyResults(4, null));
+    }
+
+    @ParameterizedTest
+    @CsvSource({ "0, 0", "0, 120", "0, 1", "119, 120", "7, 8", "5, 5", "17, 93", "24, 48", "23, 47",
+            "60, 61" })
+    void testRankRange(long fromRank, long toRank)
+    {
+        IntArrayPermuterSpliterator spl = new IntArrayPermuterSpliterator(5, fromRank, toRank);
+        assertThat(spl.estimateSize()).isEqualTo(toRank - fromRank);
+        assertThat(results(StreamSupport.stream(spl, false))).containsExactly(Arrays
+                .copyOfRange(legacyResults(5, null), (int) fromRank, (int) toRank));
+        assertThat(results(StreamSupport
+                .stream(new IntArrayPermuterSpliterator(5, fromRank, toRank), true)))
+                        .containsExactlyInAnyOrder(Arrays
+                                .copyOfRange(legacyResults(5, null), (int) fromRank,
+                                        (int) toRank));
+    }
+
+    @Test
+    void testRankRangeWithValidator()
+    {
+        IntPartialResultValidator rejectIfSecondIndexIsThree = str -> {
+            if (str.skip(1).findFirst().orElse(-1) == 3)
+                throw new ValidationException();
+        };
+        String[] all = legacyResults(5, null);
+        String[] expected = IntStream
+                .range(10, 70)
+                .mapToObj(i -> all[i])
+                .filter(str -> str.charAt(1) != '3')
+                .toArray(String[]::new);
+        assertThat(results(StreamSupport
+                .stream(new IntArrayPermuterSpliterator(5, 10, 70, rejectIfSecondIndexIsThree,
+                        null), false))).containsExactly(expected);
+    }
+
+    @Test
+    void testInvalidRankRange()
+    {
+        assertThrows(IllegalArgumentException.class,
+                () -> new IntArrayPermuterSpliterator(5, 10, 9));
+        assertThrows(IllegalArgumentException.class,
+                () -> new IntArrayPermuterSpliterator(5, 10, 121));
+        assertThrows(IllegalArgumentException.class,
+                () -> new IntArrayPermuterSpliterator(5, -1, 10));
+    }
+
+    @Test
+    void testEstimateSize()
+    {
+        int maxIndex = 5;
+        IntArrayPermuterSpliterator spl = new IntArrayPermuterSpliterator(maxIndex);
+        AtomicLong maxSize = new AtomicLong(
+                LongStream.rangeClosed(2, maxIndex).reduce((a, b) -> a * b).getAsLong());
+        assertThat(spl.estimateSize()).isEqualTo(maxSize.get());
+        while (spl.tryAdvance(str -> {
+        }))
+            assertThat(spl.estimateSize()).isEqualTo(maxSize.decrementAndGet());
+        assertThat(maxSize.get()).isEqualTo(0);
+    }
+
+    @Test
+    void testNullValidator()
+    {
+        assertThat(results(StreamSupport.stream(new IntArrayPermuterSpliterator(4, null, null),
+                false))).containsExactly(legacyResults(4, null));
+        assertThat(results(StreamSupport.stream(
+                new IntArrayPermuterSpliterator(4, BigInteger.ZERO, BigInteger.TEN, null, null),
+                false))).hasSize(10);
+    }
+
+    @Test
+    void testSizedWithoutValidator()
+    {
+        IntArrayPermuterSpliterator spl = new IntArrayPermuterSpliterator(6);
+        assertThat(spl.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED)).isTrue();
+        assertThat(spl.getExactSizeIfKnown()).isEqualTo(720);
+        assertThat(StreamSupport.stream(spl, true).toArray()).hasSize(720);
+        assertThat(new IntArrayPermuterSpliterator(21).hasCharacteristics(Spliterator.SIZED))
+                .isFalse();
+        assertThat(StreamSupport.stream(new IntArrayPermuterSpliterator(6, 10, 700), true).count())
+                .isEqualTo(690);
+        assertThat(new IntArrayPermuterSpliterator(6, new CheckpointManager())
+                .hasCharacteristics(Spliterator.SIZED)).isFalse();
+    }
+
+    @Test
+    void testEstimateSizeWithValidatorIsUpperBound()
+    {
+        IntArrayPermuterSpliterator spl = IntArrayPermuterSpliterator.withValidator(5,
+                rejectIfAnyIndexOneMoreThanThePrevious(), null);
+        assertThat(spl.hasCharacteristics(Spliterator.SIZED)).isFalse();
+        String[] expected = results(StreamSupport.stream(IntArrayPermuterSpliterator
+                .withValidator(5, rejectIfAnyIndexOneMoreThanThePrevious(), null), false));
+        for (int remaining = expected.length; remaining > 0; remaining--)
+        {
+            assertThat(spl.estimateSize()).isGreaterThanOrEqualTo(remaining);
+            spl.tryAdvance(str -> {
+            });
+        }
+        assertThat(spl.tryAdvance(str -> {
+        })).isFalse();
+        assertThat(spl.estimateSize()).isEqualTo(0);
+    }
+
+    /**
+     * Checks that a spliterator from the specified factory, advanced by the specified count,
+     * produces the permutations that another from the factory produces after that many.
+     */
+    private static void assertAdvancesBy(Supplier<IntArrayPermuterSpliterator> factory,
+            long count)
+    {
+        String[] all = results(StreamSupport.stream(factory.get(), false));
+        int skipped = (int) Math.min(count, all.length);
+        IntArrayPermuterSpliterator spl = factory.get();
+        assertThat(spl.advanceBy(count)).isEqualTo(skipped);
+        assertThat(spl.estimateSize()).isGreaterThanOrEqualTo(all.length - skipped);
+        assertThat(results(StreamSupport.stream(spl, false)))
+                .containsExactly(Arrays.copyOfRange(all, skipped, all.length));
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = { 0, 1, 5, 24, 25, 100, 119, 120, 121, Long.MAX_VALUE })
+    void testAdvanceBy(long count)
+    {
+        assertAdvancesBy(() -> new IntArrayPermuterSpliterator(5), count);
+        assertAdvancesBy(() -> new IntArrayPermuterSpliterator(5, 10, 110), count);
+        assertAdvancesBy(() -> IntArrayPermuterSpliterator.withValidator(5,
+                rejectIfAnyIndexOneMoreThanThePrevious(), null), count);
+        assertAdvancesBy(() -> rankedSpliterator(new PermutationRanker(new int[] { 2, 1, 2 }),
+                null), count);
+        assertAdvancesBy(() -> rankedSpliterator(new PermutationRanker(6, 3), null), count);
+    }
+
+    @Test
+    void testAdvanceByAfterSplittingAndAdvancing()
+    {
+        String[] all = results(StreamSupport.stream(new IntArrayPermuterSpliterator(6), false));
+        IntArrayPermuterSpliterator spl = new IntArrayPermuterSpliterator(6);
+        spl.tryAdvance(str -> {
+        });
+        IntArrayPermuterSpliterator split = spl.trySplit();
+        assertThat(spl.advanceBy(300)).isEqualTo(300);
+        assertThat(spl.estimateSize()).isEqualTo(59);
+        assertThat(results(StreamSupport.stream(spl, false)))
+                .containsExactly(Arrays.copyOfRange(all, 301, 360));
+        assertThat(split.advanceBy(400)).isEqualTo(360);
+        assertThat(split.tryAdvance(str -> {
+        })).isFalse();
+    }
+
+    @Test
+    void testAdvanceByWithCheckpointing()
+    {
+        IntArrayPermuterSpliterator spl = new IntArrayPermuterSpliterator(5,
+                new CheckpointManager());
+        assertThat(spl.advanceBy(30)).isEqualTo(30);
+        assertThat(spl.toCheckpointString()).isEqualTo("1,2,3,4/2,3,4/0,3,4/3,4/4");
+        assertThat(spl.toRankCheckpointString()).isEqualTo("30-120");
+        assertThrows(IllegalArgumentException.class, () -> spl.advanceBy(-1));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "70", "33,2,33", "20,20,1,20,9" })
+    void testMoreThan64Items(String groupSizes)
+    {
+        int[] sizes = Stream.of(groupSizes.split(",")).mapToInt(Integer::parseInt).toArray();
+        PermutationRanker ranker = sizes.length == 1 ? new PermutationRanker(sizes[0])
+                : new PermutationRanker(sizes);
+        IntArrayPermuterSpliterator spl = rankedSpliterator(ranker, null);
+        AtomicLong rank = new AtomicLong();
+        for (int i = 0; i < 1000; i++)
+            spl.tryVisit(perm -> assertThat(ranker.bigRank(perm))
+                    .isEqualTo(BigInteger.valueOf(rank.getAndIncrement())));
+        assertThat(spl.advanceBy(Long.MAX_VALUE / 3)).isEqualTo(Long.MAX_VALUE / 3);
+        BigInteger target = BigInteger.valueOf(1000 + Long.MAX_VALUE / 3);
+        for (int i = 0; i < 1000; i++, target = target.add(BigInteger.ONE))
+        {
+            BigInteger expected = target;
+            assertThat(spl.tryVisit(perm -> assertThat(ranker.bigRank(perm)).isEqualTo(expected)))
+                    .isTrue();
+        }
+    }
+
+    private static IntArrayPermuterSpliterator rankedSpliterator(PermutationRanker ranker,
+            CheckpointManager checkpointManager)
+    {
+        return new IntArrayPermuterSpliterator(ranker, BigInteger.ZERO, ranker.bigCount(), null,
+                checkpointManager);
+    }
+
+    @Test
+    void testMultisetEstimateSizeAndSplitting()
+    {
+        PermutationRanker ranker = new PermutationRanker(new int[] { 2, 3, 1, 2 });
+        IntArrayPermuterSpliterator spl = rankedSpliterator(ranker, null);
+        long expected = ranker.count();
+        assertThat(expected).isEqualTo(1680);
+        List<int[]> results = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+        {
+            assertThat(spl.estimateSize()).isEqualTo(expected--);
+            spl.tryAdvance(str -> results.add(str.toArray()));
+        }
+        Deque<IntArrayPermuterSpliterator> spls = new ArrayDeque<>(Arrays.asList(spl));
+        while (!spls.isEmpty())
+        {
+            IntArrayPermuterSpliterator next = spls.pop();
+            long size = next.estimateSize();
+            IntArrayPermuterSpliterator split = next.trySplit();
+            if (split == null)
+                StreamSupport.stream(next, false).forEach(str -> results.add(str.toArray()));
+            else
+            {
+                assertThat(next.estimateSize() + split.estimateSize()).isEqualTo(size);
+                spls.addAll(Arrays.asList(next, split));
+            }
+        }
+        assertThat(results).hasSize(1680);
+        assertThat(results.stream().map(ranker::rank).distinct()).hasSize(1680);
+    }
+
+    @Test
+    void testMultisetCheckpointing()
+    {
+        PermutationRanker ranker = new PermutationRanker(new int[] { 2, 2, 1 });
+        IntArrayPermuterSpliterator spl = rankedSpliterator(ranker, null);
+        for (int i = 0; i < 13; i++)
+            spl.tryAdvance(str -> {
+            });
+        String checkpoint = spl.toCheckpointString();
+        assertThat(checkpoint).isEqualTo("2,4/0,3,4/1,3,4/4/3");
+        assertThat(results(StreamSupport
+                .stream(rankedSpliterator(ranker, new CheckpointManager(checkpoint)), false)))
+                        .containsExactly(results(StreamSupport.stream(spl, false)));
+    }
+
+    private static String[] arrangements(int itemCount, int length)
+    {
+        return Stream
+                .of(results(StreamSupport
+                        .stream(new IntArrayPermuterSpliterator(itemCount), false)))
+                .map(str -> str.substring(0, length))
+                .distinct()
+                .toArray(String[]::new);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 1, 2, 3, 4, 5 })
+    void testArrangements(int length)
+    {
+        PermutationRanker ranker = new PermutationRanker(5, length);
+        IntArrayPermuterSpliterator spl = rankedSpliterator(ranker, null);
+        AtomicLong size = new AtomicLong(ranker.count());
+        Stream.Builder<String> actual = Stream.builder();
+        assertThat(spl.estimateSize()).isEqualTo(size.get());
+        while (spl.tryAdvance(str -> actual
+                .add(str.mapToObj(Integer::toString).collect(Collectors.joining()))))
+            assertThat(spl.estimateSize()).isEqualTo(size.decrementAndGet());
+        assertThat(actual.build().toArray(String[]::new))
+                .containsExactly(arrangements(5, length));
+    }
+
+    @Test
+    void testShortArrangementsOfManyItems()
+    {
+        PermutationRanker ranker = new PermutationRanker(50_000, 2);
+        IntArrayPermuterSpliterator spl = new IntArrayPermuterSpliterator(ranker,
+                BigInteger.valueOf(49_999), BigInteger.valueOf(50_003),
+                rejectIfAnyIndexOneMoreThanThePrevious(), null);
+        IntArrayPermuterSpliterator split = spl.trySplit();
+        assertThat(results(StreamSupport.stream(spl, false))).containsExactly("10");
+        assertThat(results(StreamSupport.stream(split, false))).containsExactly("13", "14");
+    }
+
+    @Test
+    void testArrangementsSplitting()
+    {
+        PermutationRanker ranker = new PermutationRanker(7, 4);
+        IntArrayPermuterSpliterator spl = rankedSpliterator(ranker, null);
+        Deque<IntArrayPermuterSpliterator> spls = new ArrayDeque<>(Arrays.asList(spl));
+        List<String> results = new ArrayList<>();
+        while (!spls.isEmpty())
+        {
+            IntArrayPermuterSpliterator next = spls.pop();
+            long size = next.estimateSize();
+            IntArrayPermuterSpliterator split = next.trySplit();
+            if (split == null)
+                results.addAll(Arrays.asList(results(StreamSupport.stream(next, false))));
+            else
+            {
+                assertThat(next.estimateSize() + split.estimateSize()).isEqualTo(size);
+                spls.addAll(Arrays.asList(next, split));
+            }
+        }
+        assertThat(results).containsExactlyInAnyOrder(arrangements(7, 4));
+    }
+
+    @Test
+    void testArrangementsWithValidatorAndCheckpointing()
+    {
+        PermutationRanker ranker = new PermutationRanker(5, 3);
+        IntArrayPermuterSpliterator spl = new IntArrayPermuterSpliterator(ranker,
+                BigInteger.ZERO, ranker.bigCount(), rejectIfAnyIndexOneMoreThanThePrevious(),
+                null);
+        for (int i = 0; i < 10; i++)
+            spl.tryAdvance(str -> {
+            });
+        String checkpoint = spl.toCheckpointString();
+        assertThat(checkpoint.split("/")).hasSize(3);
+        String[] remaining = results(StreamSupport.stream(spl, false));
+        assertThat(remaining).allMatch(str -> str.length() == 3);
+        assertThat(results(StreamSupport
+                .stream(new IntArrayPermuterSpliterator(ranker, BigInteger.ZERO,
+                        ranker.bigCount(), rejectIfAnyIndexOneMoreThanThePrevious(),
+                        new CheckpointManager(checkpoint)), false)))
+                                .containsExactly(remaining);
+        assertThat(Stream
+                .of(remaining)
+                .noneMatch(str -> IntStream
+                        .range(1, 3)
+                        .anyMatch(i -> str.charAt(i) == str.charAt(i - 1) + 1))).isTrue();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 0, 1, 7, 13, 29 })
+    void testRankCheckpointStrings(int advanceCount)
+    {
+        for (PermutationRanker ranker : Arrays.asList(new PermutationRanker(5),
+                new PermutationRanker(6, 3), new PermutationRanker(new int[] { 2, 1, 2 })))
+        {
+            IntArrayPermuterSpliterator spl = rankedSpliterator(ranker, null);
+            for (int i = 0; i < advanceCount; i++)
+                spl.tryAdvance(str -> {
+                });
+            IntArrayPermuterSpliterator split = spl.trySplit();
+            for (IntArrayPermuterSpliterator s : split == null ? Arrays.asList(spl)
+                    : Arrays.asList(spl, split))
+            {
+                String checkpoint = s.toRankCheckpointString();
+                String[] remaining = results(StreamSupport.stream(s, false));
+                BigInteger[] range = IntArrayPermuterSpliterator
+                        .fromRankCheckpointString(checkpoint);
+                assertThat(range[1].subtract(range[0]))
+                        .isEqualTo(BigInteger.valueOf(remaining.length));
+                assertThat(results(StreamSupport
+                        .stream(rankedSpliterator(ranker, new CheckpointManager(checkpoint)),
+                                false))).containsExactly(remaining);
+            }
+        }
+    }
+
+    @Test
+    void testRankCheckpointStringsWithValidator()
+    {
+        PermutationRanker ranker = new PermutationRanker(5);
+        Function<CheckpointManager, IntArrayPermuterSpliterator> validated = mgr ->
+                new IntArrayPermuterSpliterator(ranker, BigInteger.ZERO, ranker.bigCount(),
+                        rejectIfAnyIndexOneMoreThanThePrevious(), mgr);
+        IntArrayPermuterSpliterator spl = validated.apply(null);
+        for (int i = 0; i < 10; i++)
+            spl.tryAdvance(str -> {
+            });
+        String checkpoint = spl.toRankCheckpointString();
+        assertThat(checkpoint).isEqualTo("26-120");
+        assertThat(results(StreamSupport
+                .stream(validated.apply(new CheckpointManager(checkpoint)), false)))
+                        .containsExactly(results(StreamSupport.stream(spl, false)));
+        assertThat(spl.toRankCheckpointString()).isEmpty();
+    }
+
+    @Test
+    void testEstimateSizeWithBigSpliterator()
+    {
+        IntArrayPermuterSpliterator spl = new IntArrayPermuterSpliterator(21);
+        assertThat(spl.estimateSize()).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    void testToCheckpointString()
+    {
+        IntArrayPermuterSpliterator spl = new IntArrayPermuterSpliterator(5);
+        assertThat(spl.toCheckpointString()).isEqualTo("0,1,2,3,4/1,2,3,4/2,3,4/3,4/4");
+    }
+
+    @Test
+    void testFromCheckpointStringDataIsValid()
+    {
+        assertThat(IntArrayPermuterSpliterator.fromCheckpointString("1,2,3/4/7,0"))
+                .containsExactly(new int[] { 1, 2, 3 }, new int[] { 4 }, new int[] { 7, 0 });
+    }
+
+    @Test
+    void testFromCheckpointStringDataIsInvalid()
+    {
+        assertThrows(NumberFormatException.class,
+                () -> IntArrayPermuterSpliterator.fromCheckpointString("1,2,3/asda/7,0"));
+    }
+
+    @Test
+    void testSameCheckpointStringsAsPermuterSpliterator()
+    {
+        Function<CheckpointManager, Stream<IntStream>> legacy = mgr -> StreamSupport
+                .stream(new PermuterSpliterator(4, mgr), false);
+        Function<CheckpointManager, Stream<IntStream>> array = mgr -> StreamSupport
+                .stream(new IntArrayPermuterSpliterator(4, mgr), false);
+        assertThat(checkpoints(array, "1,2,3/0,2,3/2,3/3")).containsExactly(Stream
+                .concat(Stream.of("1,2,3/0,2,3/2,3/3"),
+                        Stream.of(checkpoints(legacy, "1,2,3/0,2,3/2,3/3")))
+                .toArray(String[]::new));
+    }
+
+    private String[] checkpoints(Function<CheckpointManager, Stream<IntStream>> streamer,
+            String initString)
+    {
+        CheckpointManager mgr = new CheckpointManager(initString);
+        Stream.Builder<String> checkpoints = Stream.builder();
+        CheckpointManager spy = spy(mgr);
+        doAnswer(ioc -> {
+            checkpoints.add(ioc.getArgument(1));
+            return null;
+        }).when(spy).checkpoint(anyInt(), anyString());
+        streamer.apply(spy).forEach(str -> str.count());
+        return checkpoints.build().toArray(String[]::new);
+    }
+
+    void testWithCheckpointing(boolean parallel, int expectedSpliteratorCount,
+            Stream<String> initStrings, Stream<String> expectedCheckpoints,
+            Stream<String> expectedResults)
+    {
+        CheckpointManager mgr = spy(new CheckpointManager());
+        AtomicInteger id = new AtomicInteger();
+        Iterator<String> inits = initStrings.iterator();
+        doAnswer(ioc -> mgr.new Checkpointer(id.getAndIncrement(),
+                inits.hasNext() ? inits.next() : null)).when(mgr).register();
+        IntArrayPermuterSpliterator spl = new IntArrayPermuterSpliterator(3, mgr);
+        String[] actual = results(StreamSupport.stream(spl, parallel));
+        assertThat(actual).containsExactlyInAnyOrder(expectedResults.toArray(String[]::new));
+        verify(mgr, times(expectedSpliteratorCount)).register();
+        expectedCheckpoints
+                .map(str -> str.split(":"))
+                .forEach(args -> verify(mgr).checkpoint(
+                        args[0].equals("*") ? anyInt() : eq(Integer.parseInt(args[0])),
+                        eq(args.length > 1 ? args[1] : "")));
+        IntStream.range(0, expectedSpliteratorCount).forEach(i -> verify(mgr).deregister(i));
+        verifyNoMoreInteractions(mgr);
+    }
+
+    @Test
+    void testCheckpointsOnlyWhenRequested()
+    {
+        CheckpointManager mgr = spy(new CheckpointManager(3600, data -> {
+        }));
+        IntArrayPermuterSpliterator spl = new IntArrayPermuterSpliterator(3, mgr);
+        for (int i = 0; i < 3; i++)
+            spl.tryAdvance(str -> {
+            });
+        verify(mgr).checkpoint(0, "0,1,2/1,2/2");
+        verify(mgr).checkpoint(0, "0,1,2/2/1");
+        mgr.requestCheckpoints();
+        mgr.requestCheckpoints();
+        spl.tryVisit(perm -> {
+        });
+        verify(mgr).checkpoint(0, "2/0,1/1");
+        spl.visitRemaining(perm -> {
+        });
+        verify(mgr, times(3)).checkpoint(anyInt(), anyString());
+        verify(mgr).deregister(0);
+    }
+
+    @Test
+    void testSplitOffSpliteratorPublishesAtOnce()
+    {
+        CheckpointManager mgr = spy(new CheckpointManager(3600, data -> {
+        }));
+        IntArrayPermuterSpliterator spl = new IntArrayPermuterSpliterator(4, mgr);
+        verify(mgr).checkpoint(0, "0,1,2,3/1,2,3/2,3/3");
+        IntArrayPermuterSpliterator split = spl.trySplit();
+        InOrder inOrder = inOrder(mgr);
+        inOrder.verify(mgr).checkpoint(0, "0,1/1,2,3/2,3/3");
+        inOrder.verify(mgr).checkpoint(1, "2,3/0,1,3/1,3/3");
+        assertThat(split.toCheckpointString()).isEqualTo("2,3/0,1,3/1,3/3");
+        verify(mgr, times(3)).checkpoint(anyInt(), anyString());
+        mgr.close();
+    }
+
+    @Test
+    void testResumeAfterSplitCoversEachPermutationOnce()
+    {
+        AtomicReference<String> output = new AtomicReference<>();
+        CheckpointManager mgr = new CheckpointManager(3600, output::set);
+        IntArrayPermuterSpliterator spl = new IntArrayPermuterSpliterator(4, mgr);
+        assertThat(spl.trySplit()).isNotNull();
+        mgr.close();
+        CheckpointManager mgr2 = new CheckpointManager(3600, data -> {
+        }, output.get().split("\\R"));
+        assertThat(new Permuter<>("a", "b", "c", "d").permute(mgr2).count()).isEqualTo(24);
+        mgr2.close();
+    }
+
+    @Test
+    void testWithCheckpointingNoInitStringsNotParallel()
+    {
+        testWithCheckpointing(false, 1, Stream.empty(),
+                Stream
+                        .of("0,1,2/1,2/2", "0,1,2/2/1", "1,2/0,2/2", "1,2/2/0", "2/0,1/1",
+                                "2/1/0", "")
+                        .map("0:"::concat),
+                Stream.of("012", "021", "102", "120", "201", "210"));
+    }
+
+    @Test
+    void testWithCheckpointingOneInitStringNotParallel()
+    {
+        testWithCheckpointing(false, 1, Stream.of("1,2/0,2/2"),
+                Stream.of("0:1,2/0,2/2", "0:1,2/2/0", "0:2/0,1/1", "0:2/1/0", "0:"),
+                Stream.of("102", "120", "201", "210"));
+    }
+
+    @Test
+    void testWithCheckpointingOneInitStringParallel()
+    {
+        testWithCheckpointing(true, 4, Stream.of("1,2/0,2/2"),
+                Stream.of("0:1,2/0,2/2", "0:1/0,2/2", "*:2/0,1/1", "*:1/0/2", "*:1/2/0",
+                        "*:2/0/1", "*:2/1/0", "0:", "1:", "2:", "3:"),
+                Stream.of("102", "120", "201", "210"));
+    }
+}
@@ -0,0 +1,247 @@
+package uk.org.thehickses.permute;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class LexicographicPermuterSpliteratorTest
+{
+    private static String[] results(Stream<IntStream> str)
+    {
+        return str
+                .map(res -> res.mapToObj(Integer::toString).collect(Collectors.joining()))
+                .toArray(String[]::new);
+    }
+
+    private static String[] expectedResults(int maxIndex)
+    {
+        return results(StreamSupport.stream(new IntArrayPermuterSpliterator(maxIndex), false));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 0, 1, 2, 3, 4, 5, 6, 7 })
+    void testSameResultsAsIntArrayPermuterSpliterator(int maxIndex)
+    {
+        assertThat(results(
+                StreamSupport.stream(new LexicographicPermuterSpliterator(maxIndex), false)))
+                        .containsExactly(expectedResults(maxIndex));
+        assertThat(results(
+                StreamSupport.stream(new LexicographicPermuterSpliterator(maxIndex), true)))
+                        .containsExactlyInAnyOrder(expectedResults(maxIndex));
+    }
+
+    @Test
+    void testWithPermutationConsumer()
+    {
+        Stream.Builder<String> actual = Stream.builder();
+        new LexicographicPermuterSpliterator(5)
+                .visitRemaining(perm -> actual
+                        .add(IntStream
+                                .of(perm)
+                                .mapToObj(Integer::toString)
+                                .collect(Collectors.joining())));
+        assertThat(actual.build().toArray(String[]::new)).containsExactly(expectedResults(5));
+    }
+
+    @ParameterizedTest
+    @CsvSource({ "0, 0", "0, 120", "0, 1", "119, 120", "7, 8", "5, 5", "17, 93", "24, 48", "23, 47",
+            "60, 61" })
+    void testRankRange(long fromRank, long toRank)
+    {
+        LexicographicPermuterSpliterator spl = new LexicographicPermuterSpliterator(5, fromRank,
+                toRank);
+        assertThat(spl.estimateSize()).isEqualTo(toRank - fromRank);
+        assertThat(results(StreamSupport.stream(spl, false))).containsExactly(
+                Arrays.copyOfRange(expectedResults(5), (int) fromRank, (int) toRank));
+    }
+
+    @Test
+    void testInvalidRankRange()
+    {
+        assertThrows(IllegalArgumentException.class,
+                () -> new LexicographicPermuterSpliterator(5, 10, 9));
+        assertThrows(IllegalArgumentException.class,
+                () -> new LexicographicPermuterSpliterator(5, 10, 121));
+        assertThrows(IllegalArgumentException.class,
+                () -> new LexicographicPermuterSpliterator(5, -1, 10));
+    }
+
+    @Test
+    void testEstimateSize()
+    {
+        LexicographicPermuterSpliterator spl = new LexicographicPermuterSpliterator(5);
+        AtomicLong size = new AtomicLong(120);
+        assertThat(spl.estimateSize()).isEqualTo(size.get());
+        while (spl.tryAdvance(str -> {
+        }))
+            assertThat(spl.estimateSize()).isEqualTo(size.decrementAndGet());
+        assertThat(size.get()).isEqualTo(0);
+    }
+
+    @Test
+    void testSized()
+    {
+        LexicographicPermuterSpliterator spl = new LexicographicPermuterSpliterator(6);
+        assertThat(spl.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED)).isTrue();
+        assertThat(StreamSupport.stream(spl, true).toArray()).hasSize(720);
+        assertThat(new LexicographicPermuterSpliterator(21).hasCharacteristics(Spliterator.SIZED))
+                .isFalse();
+        assertThat(new LexicographicPermuterSpliterator(new PermutationRanker(6), BigInteger.ZERO,
+                BigInteger.TEN, new PermutationMetrics()).hasCharacteristics(Spliterator.SIZED))
+                        .isFalse();
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = { 0, 1, 5, 24, 25, 100, 119, 120, 121, Long.MAX_VALUE })
+    void testAdvanceBy(long count)
+    {
+        String[] all = results(
+                StreamSupport.stream(new LexicographicPermuterSpliterator(5, 10, 110), false));
+        int skipped = (int) Math.min(count, all.length);
+        LexicographicPermuterSpliterator spl = new LexicographicPermuterSpliterator(5, 10, 110);
+        assertThat(spl.advanceBy(count)).isEqualTo(skipped);
+        assertThat(spl.estimateSize()).isEqualTo(all.length - skipped);
+        assertThat(results(StreamSupport.stream(spl, false)))
+                .containsExactly(Arrays.copyOfRange(all, skipped, all.length));
+    }
+
+    @Test
+    void testAdvanceByWithBigSpliterator()
+    {
+        PermutationRanker ranker = new PermutationRanker(21);
+        LexicographicPermuterSpliterator spl = new LexicographicPermuterSpliterator(21);
+        assertThat(spl.advanceBy(Long.MAX_VALUE)).isEqualTo(Long.MAX_VALUE);
+        assertThat(spl.estimateSize()).isEqualTo(Long.MAX_VALUE);
+        int[] next = new int[21];
+        spl.tryVisit(perm -> System.arraycopy(perm, 0, next, 0, perm.length));
+        assertThat(ranker.bigRank(next)).isEqualTo(BigInteger.valueOf(Long.MAX_VALUE));
+        LexicographicPermuterSpliterator split = spl.trySplit().trySplit().trySplit();
+        long size = split.estimateSize();
+        assertThat(split.advanceBy(Long.MAX_VALUE)).isEqualTo(size);
+        assertThat(split.estimateSize()).isEqualTo(0);
+    }
+
+    @Test
+    void testSplitsAreBalanced()
+    {
+        LexicographicPermuterSpliterator spl = new LexicographicPermuterSpliterator(8);
+        for (int i = 0; i < 1001; i++)
+            spl.tryAdvance(str -> {
+            });
+        LexicographicPermuterSpliterator split = spl.trySplit();
+        assertThat(spl.estimateSize()).isEqualTo(19659);
+        assertThat(split.estimateSize()).isEqualTo(19660);
+        assertThat(results(Stream
+                .of(spl, split)
+                .flatMap(s -> StreamSupport.stream(s, false))))
+                        .containsExactly(Arrays
+                                .copyOfRange(expectedResults(8), 1001, 40320));
+    }
+
+    @Test
+    void testSplitsAllTheWayDown()
+    {
+        Deque<LexicographicPermuterSpliterator> spls = new ArrayDeque<>(
+                Arrays.asList(new LexicographicPermuterSpliterator(4)));
+        List<LexicographicPermuterSpliterator> leaves = new ArrayList<>();
+        while (!spls.isEmpty())
+        {
+            LexicographicPermuterSpliterator next = spls.pop();
+            LexicographicPermuterSpliterator split = next.trySplit();
+            if (split == null)
+                leaves.add(next);
+            else
+                spls.addAll(Arrays.asList(next, split));
+        }
+        assertThat(leaves).hasSize(24).allMatch(s -> s.estimateSize() == 1);
+        assertThat(results(leaves.stream().flatMap(s -> StreamSupport.stream(s, false))))
+                .containsExactlyInAnyOrder(expectedResults(4));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 1, 2, 3, 4, 5 })
+    void testArrangements(int length)
+    {
+        PermutationRanker ranker = new PermutationRanker(5, length);
+        String[] expected = results(StreamSupport
+                .stream(new IntArrayPermuterSpliterator(ranker, BigInteger.ZERO,
+                        ranker.bigCount(), null, null), false));
+        assertThat(results(StreamSupport
+                .stream(new LexicographicPermuterSpliterator(ranker, BigInteger.ZERO,
+                        ranker.bigCount()), false))).containsExactly(expected);
+        assertThat(results(StreamSupport
+                .stream(new LexicographicPermuterSpliterator(ranker, BigInteger.ZERO,
+                        ranker.bigCount()), true))).containsExactlyInAnyOrder(expected);
+        if (expected.length > 10)
+        {
+            LexicographicPermuterSpliterator spl = new LexicographicPermuterSpliterator(ranker,
+                    BigInteger.valueOf(3), BigInteger.valueOf(expected.length - 4));
+            assertThat(spl.estimateSize()).isEqualTo(expected.length - 7);
+            assertThat(results(StreamSupport.stream(spl, false)))
+                    .containsExactly(Arrays.copyOfRange(expected, 3, expected.length - 4));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 1, 7, 120, 1000 })
+    void testVisitRemainingInBatches(int batchSize)
+    {
+        List<String> actual = new ArrayList<>();
+        List<Integer> counts = new ArrayList<>();
+        new LexicographicPermuterSpliterator(5).visitRemainingInBatches(batchSize,
+                (perms, count) -> {
+                    counts.add(count);
+                    for (int i = 0; i < count; i++)
+                        actual.add(IntStream
+                                .range(i * 5, (i + 1) * 5)
+                                .mapToObj(j -> Integer.toString(perms[j]))
+                                .collect(Collectors.joining()));
+                });
+        assertThat(actual).containsExactly(expectedResults(5));
+        assertThat(counts.subList(0, counts.size() - 1)).allMatch(c -> c == batchSize);
+    }
+
+    @Test
+    void testBigSpliterator()
+    {
+        LexicographicPermuterSpliterator spl = new LexicographicPermuterSpliterator(21);
+        assertThat(spl.estimateSize()).isEqualTo(Long.MAX_VALUE);
+        LexicographicPermuterSpliterator split = spl.trySplit();
+        PermutationRanker ranker = new PermutationRanker(21);
+        BigInteger half = ranker.bigCount().shiftRight(1);
+        assertThat(spl.estimateSize()).isEqualTo(Long.MAX_VALUE);
+        assertThat(split.estimateSize()).isEqualTo(Long.MAX_VALUE);
+        assertThat(spl.trySplit().trySplit().estimateSize())
+                .isEqualTo(half.shiftRight(2).longValueExact());
+        int[] first = new int[21];
+        split.tryVisit(perm -> System.arraycopy(perm, 0, first, 0, perm.length));
+        assertThat(ranker.bigRank(first)).isEqualTo(half);
+    }
+
+    @Test
+    void testBigSpliteratorEndsAtEndOfRange()
+    {
+        PermutationRanker ranker = new PermutationRanker(21);
+        BigInteger toRank = ranker.bigCount();
+        LexicographicPermuterSpliterator spl = new LexicographicPermuterSpliterator(21,
+                toRank.subtract(BigInteger.valueOf(3)), toRank);
+        assertThat(StreamSupport.stream(spl, false).count()).isEqualTo(3);
+    }
+}
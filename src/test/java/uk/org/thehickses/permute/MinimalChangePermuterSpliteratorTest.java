@@ -0,0 +1,166 @@
+package uk.org.thehickses.permute;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class MinimalChangePermuterSpliteratorTest
+{
+    private static String[] results(Stream<IntStream> str)
+    {
+        return str
+                .map(res -> res.mapToObj(Integer::toString).collect(Collectors.joining()))
+                .toArray(String[]::new);
+    }
+
+    private static String[] allResults(int maxIndex)
+    {
+        return results(StreamSupport.stream(new IntArrayPermuterSpliterator(maxIndex), false));
+    }
+
+    /**
+     * Visits the remaining permutations of the specified spliterator, checking that each one is
+     * the previous one with the reported positions swapped, and returns them.
+     */
+    private static List<String> visitAndCheckSwaps(MinimalChangePermuterSpliterator spl)
+    {
+        List<String> answer = new ArrayList<>();
+        int[][] previous = new int[1][];
+        spl.visitRemaining((perm, swapped1, swapped2) -> {
+            if (previous[0] == null)
+                assertThat(new int[] { swapped1, swapped2 }).containsExactly(-1, -1);
+            else
+            {
+                assertThat(swapped1).isNotEqualTo(swapped2);
+                int[] expected = previous[0].clone();
+                expected[swapped1] = previous[0][swapped2];
+                expected[swapped2] = previous[0][swapped1];
+                assertThat(perm).containsExactly(expected);
+            }
+            previous[0] = perm.clone();
+            answer.add(IntStream
+                    .of(perm)
+                    .mapToObj(Integer::toString)
+                    .collect(Collectors.joining()));
+        });
+        return answer;
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 0, 1, 2, 3, 4, 5, 6, 7 })
+    void testProducesAllPermutationsBySwaps(int maxIndex)
+    {
+        assertThat(visitAndCheckSwaps(new MinimalChangePermuterSpliterator(maxIndex)))
+                .containsExactlyInAnyOrder(allResults(maxIndex));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 0, 1, 2, 3, 4, 5, 6, 7 })
+    void testParallel(int maxIndex)
+    {
+        assertThat(results(
+                StreamSupport.stream(new MinimalChangePermuterSpliterator(maxIndex), true)))
+                        .containsExactlyInAnyOrder(allResults(maxIndex));
+    }
+
+    @Test
+    void testOrder()
+    {
+        assertThat(results(StreamSupport.stream(new MinimalChangePermuterSpliterator(3), false)))
+                .containsExactly("012", "021", "120", "102", "201", "210");
+    }
+
+    @Test
+    void testEstimateSize()
+    {
+        MinimalChangePermuterSpliterator spl = new MinimalChangePermuterSpliterator(5);
+        for (long expected = 120; expected > 0; expected--)
+        {
+            assertThat(spl.estimateSize()).isEqualTo(expected);
+            assertThat(spl.tryAdvance(str -> {
+            })).isTrue();
+        }
+        assertThat(spl.estimateSize()).isEqualTo(0);
+        assertThat(spl.tryAdvance(str -> {
+        })).isFalse();
+    }
+
+    @Test
+    void testSplitsAreBalanced()
+    {
+        MinimalChangePermuterSpliterator spl = new MinimalChangePermuterSpliterator(8);
+        MinimalChangePermuterSpliterator split = spl.trySplit();
+        assertThat(split.estimateSize()).isEqualTo(20160);
+        assertThat(spl.estimateSize()).isEqualTo(20160);
+        for (int i = 0; i < 5041; i++)
+            spl.tryAdvance(str -> {
+            });
+        split = spl.trySplit();
+        assertThat(split.estimateSize()).isEqualTo(5040);
+        assertThat(spl.estimateSize()).isEqualTo(10079);
+    }
+
+    @Test
+    void testSplitsByFixingPrefixesBeforeStarting()
+    {
+        MinimalChangePermuterSpliterator spl = new MinimalChangePermuterSpliterator(6);
+        List<MinimalChangePermuterSpliterator> spls = new ArrayList<>(Arrays.asList(spl));
+        for (int i = 0; i < 3; i++)
+            spls.add(spl.trySplit());
+        assertThat(spls.stream().mapToLong(MinimalChangePermuterSpliterator::estimateSize))
+                .containsExactly(120L, 360L, 120L, 120L);
+        MinimalChangePermuterSpliterator split = spl.trySplit();
+        assertThat(split.estimateSize()).isEqualTo(48);
+        assertThat(spl.estimateSize()).isEqualTo(72);
+        spls.add(split);
+        assertThat(spls
+                .stream()
+                .map(MinimalChangePermuterSpliteratorTest::visitAndCheckSwaps)
+                .flatMap(List::stream)).containsExactlyInAnyOrder(allResults(6));
+    }
+
+    @Test
+    void testNoSplitOnceLastRunHasStarted()
+    {
+        MinimalChangePermuterSpliterator spl = new MinimalChangePermuterSpliterator(4);
+        for (int i = 0; i < 19; i++)
+            spl.tryAdvance(str -> {
+            });
+        assertThat(spl.trySplit()).isNull();
+        assertThat(spl.estimateSize()).isEqualTo(5);
+    }
+
+    @Test
+    void testSplitsAllTheWayDown()
+    {
+        Deque<MinimalChangePermuterSpliterator> spls = new ArrayDeque<>(
+                Arrays.asList(new MinimalChangePermuterSpliterator(4)));
+        List<MinimalChangePermuterSpliterator> leaves = new ArrayList<>();
+        while (!spls.isEmpty())
+        {
+            MinimalChangePermuterSpliterator next = spls.pop();
+            MinimalChangePermuterSpliterator split = next.trySplit();
+            if (split == null)
+                leaves.add(next);
+            else
+                spls.addAll(Arrays.asList(next, split));
+        }
+        assertThat(leaves).hasSize(24).allMatch(s -> s.estimateSize() == 1);
+        assertThat(leaves
+                .stream()
+                .map(MinimalChangePermuterSpliteratorTest::visitAndCheckSwaps)
+                .flatMap(List::stream)).containsExactlyInAnyOrder(allResults(4));
+    }
+}
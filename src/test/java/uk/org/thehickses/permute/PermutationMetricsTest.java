@@ -0,0 +1,158 @@
+package uk.org.thehickses.permute;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.util.stream.IntStream;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class PermutationMetricsTest
+{
+    @ParameterizedTest
+    @ValueSource(booleans = { false, true })
+    void testCompletedRun(boolean checkpointed)
+    {
+        PermutationMetrics metrics = new PermutationMetrics();
+        new Permuter<>("a", "b", "c", "d", "e", "f", "g", "h")
+                .withMetrics(metrics)
+                .forEach(checkpointed ? new CheckpointManager() : null, perm -> {
+                });
+        assertThat(metrics.getPermutationsEmitted()).isEqualTo(40320);
+        assertThat(metrics.getLiveSpliteratorCount()).isEqualTo(0);
+        assertThat(metrics.getEstimatedRemaining()).isEqualTo(0);
+        assertThat(metrics.getEstimatedMillisRemaining()).isEqualTo(0);
+        assertThat(metrics.getPrefixesPruned()).containsOnly(0);
+        assertThat(metrics.getRate()).isGreaterThan(0);
+    }
+
+    @Test
+    void testPruning()
+    {
+        PartialResultValidator<String> validator = prefix -> {
+            if (prefix.skip(1).findFirst().filter("b"::equals).isPresent())
+                throw new ValidationException();
+        };
+        PermutationMetrics metrics = new PermutationMetrics();
+        assertThat(new Permuter<>(validator, "a", "b", "c", "d")
+                .withMetrics(metrics)
+                .permute()
+                .count()).isEqualTo(18);
+        assertThat(metrics.getPermutationsEmitted()).isEqualTo(18);
+        assertThat(metrics.getPrefixesPruned()).containsExactly(0, 3, 0, 0);
+        assertThat(metrics.getValidatorProfile()).isNull();
+        assertThat(metrics.getValidations()).isEmpty();
+    }
+
+    @Test
+    void testValidatorProfile()
+    {
+        PartialResultValidator<String> validator = prefix -> {
+            if (prefix.skip(1).findFirst().filter("b"::equals).isPresent())
+                throw new ValidationException();
+        };
+        PermutationMetrics metrics = new PermutationMetrics(true);
+        assertThat(new Permuter<>(validator, "a", "b", "c", "d")
+                .withMetrics(metrics)
+                .permute()
+                .sequential()
+                .count()).isEqualTo(18);
+        ValidatorProfile profile = metrics.getValidatorProfile();
+        assertThat(profile.getMaxPrefixLength()).isEqualTo(4);
+        assertThat(IntStream.rangeClosed(1, 4).mapToLong(profile::getValidations).toArray())
+                .containsExactly(4, 12, 18, 18);
+        assertThat(IntStream.rangeClosed(1, 4).mapToLong(profile::getRejections).toArray())
+                .containsExactly(0, 3, 0, 0);
+        assertThat(profile.getRejectRatio(2)).isEqualTo(0.25);
+        assertThat(IntStream.rangeClosed(1, 4).mapToLong(profile::getNanos).sum()).isPositive();
+        assertThat(metrics.getValidations()).containsExactly(4, 12, 18, 18);
+        assertThat(metrics.getPrefixesPruned()).containsExactly(0, 3, 0, 0);
+        assertThat(profile.toString().split(String.format("%n"))).hasSize(5);
+    }
+
+    @Test
+    void testProgress()
+    {
+        PermutationMetrics metrics = new PermutationMetrics();
+        PermutationRanker ranker = new PermutationRanker(8);
+        IntArrayPermuterSpliterator spliterator = new IntArrayPermuterSpliterator(ranker,
+                BigInteger.ZERO, ranker.bigCount(), null, null, metrics);
+        assertThat(metrics.getLiveSpliteratorCount()).isEqualTo(1);
+        assertThat(metrics.getEstimatedMillisRemaining()).isEqualTo(-1);
+        for (int i = 0; i < 10; i++)
+            spliterator.tryVisit(perm -> {
+            });
+        assertThat(metrics.getPermutationsEmitted()).isEqualTo(1);
+        assertThat(metrics.getEstimatedRemaining()).isEqualTo(40319);
+        spliterator.tryVisit(perm -> {
+        });
+        assertThat(metrics.getPermutationsEmitted()).isEqualTo(11);
+        assertThat(metrics.getEstimatedRemaining()).isEqualTo(40309);
+        assertThat(metrics.getEstimatedMillisRemaining()).isGreaterThanOrEqualTo(0);
+        IntArrayPermuterSpliterator split = spliterator.trySplit();
+        assertThat(metrics.getSplitCount()).isEqualTo(1);
+        assertThat(metrics.getLiveSpliteratorCount()).isEqualTo(2);
+        assertThat(metrics.getEstimatedRemaining()).isEqualTo(40309);
+        split.visitRemaining(perm -> {
+        });
+        assertThat(metrics.getLiveSpliteratorCount()).isEqualTo(1);
+        assertThat(metrics.getEstimatedRemaining()).isEqualTo(spliterator.estimateSize());
+    }
+
+    @Test
+    void testLexicographicSpliterator()
+    {
+        PermutationMetrics metrics = new PermutationMetrics();
+        PermutationRanker ranker = new PermutationRanker(7);
+        LexicographicPermuterSpliterator spliterator = new LexicographicPermuterSpliterator(ranker,
+                BigInteger.ZERO, ranker.bigCount(), metrics);
+        LexicographicPermuterSpliterator split = spliterator.trySplit();
+        assertThat(metrics.getSplitCount()).isEqualTo(1);
+        assertThat(metrics.getEstimatedRemaining()).isEqualTo(5040);
+        split.visitRemainingInBatches(100, (perms, count) -> {
+        });
+        assertThat(metrics.getPermutationsEmitted()).isEqualTo(2520);
+        assertThat(metrics.getEstimatedRemaining()).isEqualTo(2520);
+        while (spliterator.tryAdvance(perm -> {
+        }))
+            ;
+        assertThat(metrics.getPermutationsEmitted()).isEqualTo(5040);
+        assertThat(metrics.getLiveSpliteratorCount()).isEqualTo(0);
+    }
+
+    @Test
+    void testMXBean() throws Exception
+    {
+        PermutationMetrics metrics = new PermutationMetrics();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(
+                "uk.org.thehickses.permute:type=PermutationMetrics,name=test");
+        server.registerMBean(metrics, name);
+        try
+        {
+            new Permuter<>("a", "b", "c", "d").withMetrics(metrics).forEach(perm -> {
+            });
+            assertThat(server.getAttribute(name, "PermutationsEmitted")).isEqualTo(24L);
+            assertThat(server.getAttribute(name, "PrefixesPruned")).isEqualTo(new long[4]);
+        }
+        finally
+        {
+            server.unregisterMBean(name);
+        }
+    }
+
+    @Test
+    void testMinimalChangeOrderIsNotSupported()
+    {
+        assertThatIllegalStateException().isThrownBy(() -> new Permuter<>("a", "b", "c")
+                .withOrder(PermutationOrder.MINIMAL_CHANGE)
+                .withMetrics(new PermutationMetrics())
+                .permute());
+    }
+}
@@ -0,0 +1,166 @@
+package uk.org.thehickses.permute;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class PermutationRankerTest
+{
+    @ParameterizedTest
+    @ValueSource(ints = { 0, 1, 2, 3, 4, 5, 6 })
+    void testRanksFollowEnumerationOrder(int itemCount)
+    {
+        PermutationRanker ranker = new PermutationRanker(itemCount);
+        int[][] permutations = StreamSupport
+                .stream(new PermuterSpliterator(itemCount), false)
+                .map(IntStream::toArray)
+                .toArray(int[][]::new);
+        assertThat(ranker.count()).isEqualTo(Math.max(1, permutations.length));
+        for (int rank = 0; rank < permutations.length; rank++)
+        {
+            assertThat(ranker.rank(permutations[rank])).isEqualTo(rank);
+            assertThat(ranker.bigRank(permutations[rank])).isEqualTo(BigInteger.valueOf(rank));
+            assertThat(ranker.unrank(rank)).containsExactly(permutations[rank]);
+            assertThat(ranker.unrank(BigInteger.valueOf(rank)))
+                    .containsExactly(permutations[rank]);
+        }
+    }
+
+    @Test
+    void testBigRanks()
+    {
+        PermutationRanker ranker = new PermutationRanker(25);
+        BigInteger count = ranker.bigCount();
+        assertThat(count).isEqualTo(new BigInteger("15511210043330985984000000"));
+        assertThrows(ArithmeticException.class, ranker::count);
+        int[] last = IntStream.range(0, 25).map(i -> 24 - i).toArray();
+        assertThat(ranker.unrank(count.subtract(BigInteger.ONE))).containsExactly(last);
+        assertThat(ranker.bigRank(last)).isEqualTo(count.subtract(BigInteger.ONE));
+        assertThrows(ArithmeticException.class, () -> ranker.rank(last));
+        BigInteger rank = new BigInteger("1234567890123456789012345");
+        assertThat(ranker.bigRank(ranker.unrank(rank))).isEqualTo(rank);
+        assertThat(ranker.rank(ranker.unrank(Long.MAX_VALUE))).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    void testUnrankMatchesSpliteratorForBigItemCount()
+    {
+        int[] expected = StreamSupport
+                .stream(new IntArrayPermuterSpliterator(22, 1000000, 1000001), false)
+                .findFirst()
+                .get()
+                .toArray();
+        assertThat(new PermutationRanker(22).unrank(1000000)).containsExactly(expected);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 0, 1, 2, 3, 4, 5 })
+    void testArrangementRanksFollowEnumerationOrder(int length)
+    {
+        PermutationRanker ranker = new PermutationRanker(5, length);
+        assertThat(ranker.getLength()).isEqualTo(length);
+        int[][] arrangements = StreamSupport
+                .stream(new PermuterSpliterator(5), false)
+                .map(str -> str.limit(length).boxed().collect(Collectors.toList()))
+                .distinct()
+                .map(list -> list.stream().mapToInt(Integer::intValue).toArray())
+                .toArray(int[][]::new);
+        assertThat(ranker.count()).isEqualTo(arrangements.length);
+        for (int rank = 0; rank < arrangements.length; rank++)
+        {
+            assertThat(ranker.rank(arrangements[rank])).isEqualTo(rank);
+            assertThat(ranker.bigRank(arrangements[rank])).isEqualTo(BigInteger.valueOf(rank));
+            assertThat(ranker.unrank(rank)).containsExactly(arrangements[rank]);
+        }
+    }
+
+    @Test
+    void testBigArrangementRanks()
+    {
+        PermutationRanker ranker = new PermutationRanker(30, 12);
+        BigInteger count = ranker.bigCount();
+        assertThat(count).isEqualTo(new BigInteger("41430393164160000"));
+        assertThat(ranker.count()).isEqualTo(41430393164160000L);
+        int[] last = IntStream.range(0, 12).map(i -> 29 - i).toArray();
+        assertThat(ranker.unrank(count.subtract(BigInteger.ONE))).containsExactly(last);
+        assertThat(ranker.rank(last)).isEqualTo(count.longValue() - 1);
+        assertThrows(ArithmeticException.class, () -> new PermutationRanker(30, 20).count());
+        assertThrows(IllegalArgumentException.class, () -> new PermutationRanker(3, 4));
+    }
+
+    @Test
+    void testMultisetRanksFollowEnumerationOrder()
+    {
+        PermutationRanker ranker = new PermutationRanker(new int[] { 2, 1, 3 });
+        assertThat(ranker.getItemCount()).isEqualTo(6);
+        assertThat(ranker.count()).isEqualTo(60);
+        int[][] permutations = StreamSupport
+                .stream(new IntArrayPermuterSpliterator(ranker, BigInteger.ZERO,
+                        ranker.bigCount(), null, null), false)
+                .map(IntStream::toArray)
+                .toArray(int[][]::new);
+        assertThat(permutations).hasSize(60);
+        assertThat(Stream
+                .of(permutations)
+                .map(p -> IntStream.of(p).mapToObj(i -> "aabccc".substring(i, i + 1)).collect(
+                        Collectors.joining()))
+                .distinct()).hasSize(60);
+        for (int rank = 0; rank < permutations.length; rank++)
+        {
+            assertThat(ranker.rank(permutations[rank])).isEqualTo(rank);
+            assertThat(ranker.unrank(rank)).containsExactly(permutations[rank]);
+        }
+    }
+
+    @Test
+    void testBigMultisetRanks()
+    {
+        int[] groupSizes = new int[] { 10, 10, 10 };
+        PermutationRanker ranker = new PermutationRanker(groupSizes);
+        assertThat(ranker.bigCount()).isEqualTo(new BigInteger("5550996791340"));
+        assertThat(ranker.count()).isEqualTo(5550996791340L);
+        int[] last = IntStream.range(0, 30).map(i -> 20 - (i / 10) * 10 + i % 10).toArray();
+        assertThat(ranker.unrank(ranker.count() - 1)).containsExactly(last);
+        assertThat(ranker.rank(last)).isEqualTo(ranker.count() - 1);
+        assertThat(ranker.rank(ranker.unrank(1234567890123L))).isEqualTo(1234567890123L);
+    }
+
+    @Test
+    void testDistinctGroupsAreTheSameAsItemCount()
+    {
+        PermutationRanker ranker = new PermutationRanker(new int[] { 1, 1, 1, 1 });
+        assertThat(ranker.count()).isEqualTo(24);
+        assertThat(ranker.groupStarts()).isNull();
+    }
+
+    @Test
+    void testInvalidMultisetArguments()
+    {
+        PermutationRanker ranker = new PermutationRanker(new int[] { 2, 2 });
+        assertThrows(IllegalArgumentException.class, () -> ranker.rank(new int[] { 1, 0, 2, 3 }));
+        assertThrows(IllegalArgumentException.class, () -> ranker.rank(new int[] { 0, 2, 3, 4 }));
+        assertThrows(IllegalArgumentException.class, () -> ranker.unrank(6));
+        assertThrows(IllegalArgumentException.class,
+                () -> new PermutationRanker(new int[] { 2, 0 }));
+    }
+
+    @Test
+    void testInvalidArguments()
+    {
+        PermutationRanker ranker = new PermutationRanker(4);
+        assertThrows(IllegalArgumentException.class, () -> ranker.unrank(24));
+        assertThrows(IllegalArgumentException.class, () -> ranker.unrank(-1));
+        assertThrows(IllegalArgumentException.class, () -> ranker.rank(new int[] { 0, 1, 1, 3 }));
+        assertThrows(IllegalArgumentException.class, () -> ranker.rank(new int[] { 0, 1, 2 }));
+        assertThrows(IllegalArgumentException.class, () -> new PermutationRanker(-1));
+    }
+}
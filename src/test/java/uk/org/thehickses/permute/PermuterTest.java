@@ -1,10 +1,22 @@
 package uk.org.thehickses.permute;
 
 import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
 
+import java.math.BigInteger;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IntSummaryStatistics;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.LongStream;
@@ -12,8 +24,11 @@ import java.util.stream.Stream;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import uk.org.thehickses.permute.CheckpointManager.CheckpointOutputHandler;
+
 class PermuterTest
 {
     @ParameterizedTest
@@ -56,6 +71,64 @@ class PermuterTest
                 .isFalse();
     }
 
+    private static class RejectIfIncludesBImmediatelyFollowedByC
+            implements IncrementalValidator<String>
+    {
+        private final Deque<String> prefix = new ArrayDeque<>();
+
+        @Override
+        public boolean push(int index, String item)
+        {
+            boolean valid = !("b".equals(prefix.peek()) && item.equals("c"));
+            prefix.push(item);
+            return valid;
+        }
+
+        @Override
+        public void pop()
+        {
+            prefix.pop();
+        }
+    }
+
+    @Test
+    void testWithIncrementalValidator()
+    {
+        assertThat(new Permuter<>("a", "b", "c", "d")
+                .withValidator(RejectIfIncludesBImmediatelyFollowedByC::new)
+                .permute()
+                .map(comb -> comb.collect(Collectors.joining())))
+                        .containsExactlyInAnyOrder("abdc", "acbd", "acdb", "adcb", "bacd",
+                                "badc", "bdac", "bdca", "cabd", "cadb", "cbad", "cbda", "cdab",
+                                "cdba", "dacb", "dbac", "dcab", "dcba");
+    }
+
+    @Test
+    void testWithNullValidator()
+    {
+        assertThat(new Permuter<>(null, "a", "b").permute().map(
+                comb -> comb.collect(Collectors.joining()))).containsExactlyInAnyOrder("ab", "ba");
+        assertThat(new Permuter<>(null, Arrays.asList("a", "b")).withValidator(null).permute())
+                .hasSize(2);
+    }
+
+    @Test
+    void testWithPrefixValidator()
+    {
+        PrefixValidator<String> noBImmediatelyFollowedByC = prefix -> {
+            int size = prefix.size();
+            return size < 2
+                    || !(prefix.get(size - 2).equals("b") && prefix.get(size - 1).equals("c"));
+        };
+        assertThat(new Permuter<>("a", "b", "c", "d")
+                .withValidator(PrefixValidator.incremental(noBImmediatelyFollowedByC))
+                .permute()
+                .map(comb -> comb.collect(Collectors.joining())))
+                        .containsExactlyInAnyOrder("abdc", "acbd", "acdb", "adcb", "bacd",
+                                "badc", "bdac", "bdca", "cabd", "cadb", "cbad", "cbda", "cdab",
+                                "cdba", "dacb", "dbac", "dcab", "dcba");
+    }
+
     @Test
     void testWithInputStream()
     {
@@ -109,4 +182,433 @@ class PermuterTest
                 .permute(checkpointManager)
                 .count()).isEqualTo(720);
     }
+
+    @Test
+    void testMinimalChangeOrder()
+    {
+        String[] items = { "a", "b", "c", "d", "e" };
+        Permuter<String> permuter = new Permuter<>(items);
+        assertThat(permuter
+                .withOrder(PermutationOrder.MINIMAL_CHANGE)
+                .permute()
+                .map(str -> str.collect(Collectors.joining())))
+                        .containsExactlyInAnyOrderElementsOf(permuter
+                                .permute()
+                                .map(str -> str.collect(Collectors.joining()))
+                                .collect(Collectors.toList()));
+    }
+
+    @Test
+    void testForEachWithSwaps()
+    {
+        String[] items = { "a", "b", "c", "d", "e", "f" };
+        Set<String> actual = ConcurrentHashMap.newKeySet();
+        LongAdder sequences = new LongAdder();
+        new Permuter<>(items).forEachWithSwaps(() -> {
+            sequences.increment();
+            StringBuilder current = new StringBuilder();
+            return (perm, swapped1, swapped2) -> {
+                if (swapped1 == -1)
+                    IntStream.of(perm).forEach(i -> current.append(items[i]));
+                else
+                {
+                    char first = current.charAt(swapped1);
+                    current.setCharAt(swapped1, current.charAt(swapped2));
+                    current.setCharAt(swapped2, first);
+                }
+                assertThat(actual.add(current.toString())).isTrue();
+            };
+        });
+        assertThat(actual).hasSize(720);
+        assertThat(sequences.sum()).isGreaterThanOrEqualTo(1);
+    }
+
+    @Test
+    void testMinimalChangeOrderRestrictions()
+    {
+        Permuter<String> permuter = new Permuter<>(str -> {
+        }, "a", "b", "c").withOrder(PermutationOrder.MINIMAL_CHANGE);
+        assertThrows(IllegalStateException.class, () -> permuter.permute());
+        Permuter<String> unvalidated = new Permuter<>("a", "b", "c")
+                .withOrder(PermutationOrder.MINIMAL_CHANGE);
+        assertThrows(IllegalStateException.class,
+                () -> unvalidated.permute(new CheckpointManager()));
+        assertThrows(IllegalStateException.class, () -> unvalidated.permute(0, 2));
+    }
+
+    @Test
+    void testForEach()
+    {
+        String[] items = { "a", "b", "c", "d", "e" };
+        Permuter<String> permuter = new Permuter<>(items);
+        Set<String> actual = ConcurrentHashMap.newKeySet();
+        permuter
+                .forEach(perm -> actual
+                        .add(IntStream
+                                .of(perm)
+                                .mapToObj(i -> items[i])
+                                .collect(Collectors.joining())));
+        assertThat(actual)
+                .containsExactlyInAnyOrderElementsOf(permuter
+                        .permute()
+                        .map(str -> str.collect(Collectors.joining()))
+                        .collect(Collectors.toList()));
+    }
+
+    @Test
+    void testForEachBatch()
+    {
+        String[] items = { "a", "b", "c", "d", "e" };
+        PartialResultValidator<String> rejectIfStartsWithB = str -> {
+            if (str.findFirst().get().equals("b"))
+                throw new ValidationException();
+        };
+        for (Permuter<String> permuter : Arrays.asList(new Permuter<>(items),
+                new Permuter<>(rejectIfStartsWithB, items), new Permuter<>(items).withLength(2)))
+        {
+            List<String> expected = permuter
+                    .permute()
+                    .map(str -> str.collect(Collectors.joining()))
+                    .collect(Collectors.toList());
+            for (CheckpointManager checkpointManager : Arrays
+                    .asList(null, new CheckpointManager()))
+            {
+                Set<String> actual = ConcurrentHashMap.newKeySet();
+                permuter.forEachBatch(7, checkpointManager, (perms, count) -> {
+                    int length = expected.get(0).length();
+                    assertThat(count).isBetween(1, 7);
+                    for (int i = 0; i < count; i++)
+                        actual.add(IntStream
+                                .range(i * length, (i + 1) * length)
+                                .mapToObj(j -> items[perms[j]])
+                                .collect(Collectors.joining()));
+                });
+                assertThat(actual).containsExactlyInAnyOrderElementsOf(expected);
+            }
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> new Permuter<>(items).forEachBatch(0, (perms, count) -> {
+                }));
+    }
+
+    @Test
+    void testForEachWithCheckpointManager()
+    {
+        CheckpointManager checkpointManager = new CheckpointManager("0/1,2,3,4,5/2,3,4,5/3,4,5/5/4",
+                "1/3/2/4/5/0", "2,3/3,4/0/1/5/4", "4/0/1/2,3,5/3,5/5", "5/4/3/2/1,0/0");
+        LongAdder count = new LongAdder();
+        new Permuter<>("abcdef".chars().mapToObj(ch -> "" + (char) ch))
+                .forEach(checkpointManager, perm -> count.increment());
+        assertThat(count.sum()).isEqualTo(273);
+    }
+
+    @Test
+    void testWithRankCheckpoints()
+    {
+        Permuter<String> permuter = new Permuter<>("a", "b", "c", "d", "e");
+        CheckpointManager checkpointManager = new CheckpointManager("100-120",
+                "0/1,2,3,4/2,3,4/3,4/4");
+        checkpointManager.setFormat(CheckpointFormat.RANKS);
+        Set<String> published = ConcurrentHashMap.newKeySet();
+        CheckpointManager spy = spy(checkpointManager);
+        doAnswer(ioc -> published.add(ioc.getArgument(1))).when(spy).checkpoint(anyInt(),
+                anyString());
+        assertThat(permuter.permute(spy).sequential().count()).isEqualTo(44);
+        assertThat(published).allMatch(str -> str.isEmpty() || str.matches("\\d+-\\d+"));
+        assertThat(published).anyMatch(str -> str.startsWith("1-"));
+        assertThat(published).anyMatch(str -> str.startsWith("101-"));
+    }
+
+    @Test
+    void testCountTraversesWhenCheckpointedOrMeasured()
+    {
+        Permuter<String> permuter = new Permuter<>("a", "b", "c", "d", "e");
+        CheckpointOutputHandler handler = mock(CheckpointOutputHandler.class);
+        CheckpointManager checkpointManager = new CheckpointManager(3600, handler, "0-17",
+                "100-104", "2/0,1,3,4/1,3,4/3,4/4");
+        assertThat(permuter.permute(new CheckpointManager("0-17", "100-104")).spliterator()
+                .hasCharacteristics(Spliterator.SIZED)).isFalse();
+        assertThat(permuter.permute(checkpointManager).count()).isEqualTo(45);
+        verify(handler).handleOutput("");
+        PermutationMetrics metrics = new PermutationMetrics();
+        assertThat(permuter.withMetrics(metrics).permute().count()).isEqualTo(120);
+        assertThat(metrics.getPermutationsEmitted()).isEqualTo(120);
+        assertThat(metrics.getLiveSpliteratorCount()).isEqualTo(0);
+        assertThat(permuter.permute().spliterator().hasCharacteristics(
+                Spliterator.SIZED | Spliterator.SUBSIZED)).isTrue();
+    }
+
+    private static List<String> strings(Stream<Stream<String>> permutations)
+    {
+        return permutations
+                .map(str -> str.collect(Collectors.joining()))
+                .collect(Collectors.toList());
+    }
+
+    @ParameterizedTest
+    @CsvSource({ "0,10", "7,20", "100,50", "119,5", "200,5", "0,0" })
+    void testWindow(long offset, long count)
+    {
+        List<Permuter<String>> permuters = Arrays.asList(
+                new Permuter<>("a", "b", "c", "d", "e"),
+                new Permuter<>("a", "b", "c", "d", "e")
+                        .withValidator(RejectIfIncludesBImmediatelyFollowedByC::new),
+                new Permuter<>("a", "b", "a", "c", "b").asMultiset(),
+                new Permuter<>("a", "b", "c", "d", "e").withLength(3),
+                new Permuter<>("a", "b", "c", "d", "e").withOrder(PermutationOrder.MINIMAL_CHANGE));
+        for (Permuter<String> permuter : permuters)
+            assertThat(strings(permuter.window(offset, count))).containsExactlyElementsOf(
+                    strings(permuter.permute().sequential().skip(offset).limit(count)));
+    }
+
+    @Test
+    void testInvalidWindow()
+    {
+        Permuter<String> permuter = new Permuter<>("a", "b", "c");
+        assertThrows(IllegalArgumentException.class, () -> permuter.window(-1, 2));
+        assertThrows(IllegalArgumentException.class, () -> permuter.window(1, -2));
+    }
+
+    @Test
+    void testPermutationAt()
+    {
+        Permuter<String> permuter = new Permuter<>("a", "b", "c", "d");
+        assertThat(permuter.permutationAt(0)).containsExactly("a", "b", "c", "d");
+        assertThat(permuter.permutationAt(9)).containsExactly("b", "c", "d", "a");
+        assertThat(permuter.permutationAt(BigInteger.valueOf(23)))
+                .containsExactly("d", "c", "b", "a");
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 1, 2, 3, 7, 720, 1000 })
+    void testShards(int shardCount)
+    {
+        Permuter<String> permuter = new Permuter<>("a", "b", "c", "d", "e", "f");
+        List<String> all = permuter
+                .permute()
+                .map(str -> str.collect(Collectors.joining()))
+                .sorted()
+                .collect(Collectors.toList());
+        List<List<String>> shards = IntStream
+                .range(0, shardCount)
+                .mapToObj(i -> permuter
+                        .permute(i, shardCount)
+                        .map(str -> str.collect(Collectors.joining()))
+                        .sorted()
+                        .collect(Collectors.toList()))
+                .collect(Collectors.toList());
+        assertThat(shards.stream().flatMap(List::stream)).containsExactlyElementsOf(all);
+        IntSummaryStatistics sizes = shards.stream().mapToInt(List::size).summaryStatistics();
+        assertThat(sizes.getMax() - sizes.getMin()).isLessThanOrEqualTo(1);
+    }
+
+    @Test
+    void testShardsWithValidatorAndCheckpointManager()
+    {
+        PartialResultValidator<String> rejectIfStartsWithB = str -> {
+            if (str.findFirst().get().equals("b"))
+                throw new ValidationException();
+        };
+        Permuter<String> permuter = new Permuter<>(rejectIfStartsWithB, "a", "b", "c", "d", "e");
+        long total = IntStream
+                .range(0, 4)
+                .mapToLong(i -> permuter.permute(i, 4, new CheckpointManager()).count())
+                .sum();
+        assertThat(total).isEqualTo(96);
+        assertThat(permuter.permute(1, 4, new CheckpointManager("2/0,1,3/3,4/1,4/4")).count())
+                .isEqualTo(10);
+    }
+
+    @Test
+    void testMultiset()
+    {
+        Permuter<String> permuter = new Permuter<>("a", "b", "a", "c", "b").asMultiset();
+        assertThat(permuter.getItems()).containsExactly("a", "a", "b", "b", "c");
+        List<String> results = permuter
+                .permute()
+                .map(str -> str.collect(Collectors.joining()))
+                .collect(Collectors.toList());
+        assertThat(results).hasSize(30).doesNotHaveDuplicates();
+        assertThat(results)
+                .containsExactlyInAnyOrderElementsOf(new Permuter<>("a", "a", "b", "b", "c")
+                        .permute()
+                        .map(str -> str.collect(Collectors.joining()))
+                        .collect(Collectors.toSet()));
+        assertThat(permuter
+                .permute(new CheckpointManager())
+                .map(str -> str.collect(Collectors.joining())))
+                        .containsExactlyInAnyOrderElementsOf(results);
+        assertThat(IntStream
+                .range(0, 4)
+                .mapToObj(i -> permuter.permute(i, 4))
+                .flatMap(str -> str.map(s -> s.collect(Collectors.joining()))))
+                        .containsExactlyInAnyOrderElementsOf(results);
+        assertThat(permuter.permutationAt(29).collect(Collectors.joining())).isEqualTo("cbbaa");
+    }
+
+    @Test
+    void testMultisetWithComparatorAndValidator()
+    {
+        PartialResultValidator<String> rejectIfStartsWithB = str -> {
+            if (str.findFirst().get().equalsIgnoreCase("b"))
+                throw new ValidationException();
+        };
+        assertThat(new Permuter<>(rejectIfStartsWithB, "a", "B", "A", "b")
+                .asMultiset(String.CASE_INSENSITIVE_ORDER)
+                .permute()
+                .map(str -> str.collect(Collectors.joining())))
+                        .containsExactlyInAnyOrder("aABb", "aBAb", "aBbA");
+        assertThrows(IllegalStateException.class, () -> new Permuter<>("a", "a")
+                .asMultiset()
+                .withOrder(PermutationOrder.MINIMAL_CHANGE)
+                .permute());
+    }
+
+    @Test
+    void testPartialPermutations()
+    {
+        Permuter<String> permuter = new Permuter<>("a", "b", "c", "d", "e");
+        List<String> expected = permuter
+                .permute()
+                .map(str -> str.limit(3).collect(Collectors.joining()))
+                .distinct()
+                .sorted()
+                .collect(Collectors.toList());
+        assertThat(expected).hasSize(60);
+        assertThat(permuter.permute(3).map(str -> str.collect(Collectors.joining())))
+                .containsExactlyElementsOf(expected);
+        Permuter<String> partial = permuter.withLength(3);
+        assertThat(partial
+                .permute(new CheckpointManager())
+                .map(str -> str.collect(Collectors.joining())))
+                        .containsExactlyInAnyOrderElementsOf(expected);
+        assertThat(IntStream
+                .range(0, 7)
+                .mapToObj(i -> partial.permute(i, 7))
+                .flatMap(str -> str.map(s -> s.collect(Collectors.joining()))))
+                        .containsExactlyInAnyOrderElementsOf(expected);
+        assertThat(partial.permutationAt(59)).containsExactly("e", "d", "c");
+        assertThat(permuter.permute(0).count()).isEqualTo(0);
+        assertThat(permuter.withLength(0).permute(new CheckpointManager()).count()).isEqualTo(0);
+    }
+
+    @Test
+    void testPartialPermutationsWithValidator()
+    {
+        PartialResultValidator<String> rejectIfIncludesBImmediatelyFollowedByC = str -> {
+            if (str.collect(Collectors.joining()).contains("bc"))
+                throw new ValidationException();
+        };
+        assertThat(new Permuter<>(rejectIfIncludesBImmediatelyFollowedByC, "a", "b", "c")
+                .permute(2)
+                .map(str -> str.collect(Collectors.joining())))
+                        .containsExactly("ab", "ac", "ba", "ca", "cb");
+    }
+
+    @Test
+    void testPartialPermutationRestrictions()
+    {
+        Permuter<String> permuter = new Permuter<>("a", "b", "a");
+        assertThrows(IllegalArgumentException.class, () -> permuter.withLength(4));
+        assertThrows(IllegalArgumentException.class, () -> permuter.withLength(-1));
+        assertThrows(IllegalStateException.class, () -> permuter.withLength(2).asMultiset());
+        assertThrows(IllegalStateException.class, () -> permuter.asMultiset().withLength(2));
+        assertThrows(IllegalStateException.class, () -> permuter
+                .withOrder(PermutationOrder.MINIMAL_CHANGE)
+                .permute(2));
+    }
+
+    private static String canonical(String perm, Symmetry symmetry)
+    {
+        Stream<String> equivalents = Stream.of(perm);
+        if (symmetry == Symmetry.CYCLIC || symmetry == Symmetry.DIHEDRAL)
+            equivalents = equivalents
+                    .flatMap(str -> IntStream
+                            .range(0, str.length())
+                            .mapToObj(i -> str.substring(i) + str.substring(0, i)));
+        if (symmetry == Symmetry.REVERSAL || symmetry == Symmetry.DIHEDRAL)
+            equivalents = equivalents
+                    .flatMap(str -> Stream.of(str, new StringBuilder(str).reverse().toString()));
+        return equivalents.min(Comparator.naturalOrder()).get();
+    }
+
+    @ParameterizedTest
+    @CsvSource({ "CYCLIC, 1, 1", "CYCLIC, 6, 120", "REVERSAL, 1, 1", "REVERSAL, 2, 1",
+            "REVERSAL, 6, 360", "DIHEDRAL, 2, 1", "DIHEDRAL, 3, 1", "DIHEDRAL, 6, 60",
+            "NONE, 4, 24" })
+    void testSymmetry(Symmetry symmetry, int itemCount, int expectedCount)
+    {
+        Permuter<String> permuter = new Permuter<>(
+                "abcdef".substring(0, itemCount).chars().mapToObj(ch -> "" + (char) ch));
+        Set<String> expected = permuter
+                .permute()
+                .map(str -> canonical(str.collect(Collectors.joining()), symmetry))
+                .collect(Collectors.toSet());
+        Permuter<String> symmetric = permuter.withSymmetry(symmetry);
+        List<String> actual = symmetric
+                .permute()
+                .map(str -> str.collect(Collectors.joining()))
+                .collect(Collectors.toList());
+        assertThat(actual).hasSize(expectedCount).doesNotHaveDuplicates();
+        assertThat(actual.stream().map(str -> canonical(str, symmetry)))
+                .containsExactlyInAnyOrderElementsOf(expected);
+        assertThat(symmetric
+                .permute(new CheckpointManager())
+                .map(str -> str.collect(Collectors.joining())))
+                        .containsExactlyInAnyOrderElementsOf(actual);
+        assertThat(IntStream
+                .range(0, 3)
+                .mapToObj(i -> symmetric.permute(i, 3))
+                .flatMap(str -> str.map(s -> s.collect(Collectors.joining()))))
+                        .containsExactlyInAnyOrderElementsOf(actual);
+    }
+
+    @Test
+    void testSymmetryWithValidator()
+    {
+        PartialResultValidator<String> rejectIfIncludesBImmediatelyFollowedByC = str -> {
+            if (str.collect(Collectors.joining()).contains("bc"))
+                throw new ValidationException();
+        };
+        Permuter<String> permuter = new Permuter<>(rejectIfIncludesBImmediatelyFollowedByC, "a",
+                "b", "c", "d", "e");
+        List<String> expected = permuter
+                .permute()
+                .map(str -> str.collect(Collectors.joining()))
+                .filter(str -> str.startsWith("a") && str.charAt(1) < str.charAt(4))
+                .collect(Collectors.toList());
+        assertThat(expected).hasSize(9);
+        assertThat(permuter
+                .withSymmetry(Symmetry.DIHEDRAL)
+                .permute()
+                .map(str -> str.collect(Collectors.joining())))
+                        .containsExactlyInAnyOrderElementsOf(expected);
+    }
+
+    @Test
+    void testSymmetryRestrictions()
+    {
+        Permuter<String> permuter = new Permuter<>("a", "b", "a");
+        assertThrows(IllegalStateException.class,
+                () -> permuter.asMultiset().withSymmetry(Symmetry.CYCLIC));
+        assertThrows(IllegalStateException.class,
+                () -> permuter.withSymmetry(Symmetry.REVERSAL).asMultiset());
+        assertThrows(IllegalStateException.class,
+                () -> permuter.withLength(2).withSymmetry(Symmetry.DIHEDRAL));
+        assertThrows(IllegalStateException.class,
+                () -> permuter.withSymmetry(Symmetry.DIHEDRAL).withLength(2));
+        assertThrows(IllegalStateException.class, () -> permuter
+                .withSymmetry(Symmetry.CYCLIC)
+                .withOrder(PermutationOrder.MINIMAL_CHANGE)
+                .permute());
+    }
+
+    @Test
+    void testInvalidShard()
+    {
+        Permuter<String> permuter = new Permuter<>("a", "b", "c");
+        assertThrows(IllegalArgumentException.class, () -> permuter.permute(3, 3));
+        assertThrows(IllegalArgumentException.class, () -> permuter.permute(-1, 3));
+        assertThrows(IllegalArgumentException.class, () -> permuter.permute(0, 0));
+    }
 }